@@ -5,12 +5,12 @@ import com.example.AuthorizationServer.repository.OrganizationRepository;
 import com.example.AuthorizationServer.repository.UserRepository;
 import com.example.AuthorizationServer.bo.entity.Organization;
 import com.example.AuthorizationServer.service.UserService;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import java.util.*;
@@ -21,16 +21,12 @@ import java.util.*;
  * The Application class containing the runnable main. Also responsible for seeding the database.
  */
 @SpringBootApplication
+@EnableScheduling
 public class AuthorizationServerApplication {
 
 	@Autowired
 	private UserService userService;
 
-	@Bean
-	public ModelMapper modelMapper() {
-		return new ModelMapper();
-	}
-
 	/*
 	@Bean
 	InitializingBean seedDatabase() {
@@ -0,0 +1,38 @@
+package com.example.AuthorizationServer.bo.dto;
+
+import java.util.List;
+
+/**
+ * Data transfer object for one page of a cursor paginated listing. The next cursor is an opaque token that is passed
+ * back to retrieve the following page and is null when there are no more items. The total is an exact count of all
+ * items, computed only when asked for since it is not bounded by the page size like the page itself.
+ *
+ * @param <T> the type of the items in the page.
+ */
+public class CursorPageDTO<T> {
+
+    // Properties ---------------------------------------------------------------------------------
+    private List<T> items;
+    private String nextCursor;
+    private Long total;
+
+    // Getters/setters ----------------------------------------------------------------------------
+    public List<T> getItems() { return items; }
+    public void setItems(List<T> items) { this.items = items; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+
+    public Long getTotal() { return total; }
+    public void setTotal(Long total) { this.total = total; }
+
+    // Constructors -------------------------------------------------------------------------------
+    public CursorPageDTO() {
+    }
+
+    public CursorPageDTO(List<T> items, String nextCursor, Long total) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.total = total;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.AuthorizationServer.bo.dto;
+
+import java.time.Instant;
+
+/**
+ * Data transfer object describing the status and progress of an asynchronous bulk user import job.
+ */
+public class ImportJobDTO {
+
+    // Properties ---------------------------------------------------------------------------------
+    private String id;
+    private String status;
+    private String message;
+    private Instant submitted;
+    private Instant started;
+    private Instant finished;
+    private double rowsPerSecond;
+    private ImportReportDTO report;
+
+    // Getters/setters ----------------------------------------------------------------------------
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+
+    public Instant getSubmitted() { return submitted; }
+    public void setSubmitted(Instant submitted) { this.submitted = submitted; }
+
+    public Instant getStarted() { return started; }
+    public void setStarted(Instant started) { this.started = started; }
+
+    public Instant getFinished() { return finished; }
+    public void setFinished(Instant finished) { this.finished = finished; }
+
+    public double getRowsPerSecond() { return rowsPerSecond; }
+    public void setRowsPerSecond(double rowsPerSecond) { this.rowsPerSecond = rowsPerSecond; }
+
+    public ImportReportDTO getReport() { return report; }
+    public void setReport(ImportReportDTO report) { this.report = report; }
+
+    // Constructors -------------------------------------------------------------------------------
+    public ImportJobDTO() {
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.AuthorizationServer.bo.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data transfer object summarizing the outcome of a bulk user import. Only the first rejected rows are reported in
+ * detail to keep the report bounded for very large imports. Recording methods are synchronized since a report may be
+ * read through snapshot() while an import job is still filling it in.
+ */
+public class ImportReportDTO {
+
+    // Constants ----------------------------------------------------------------------------------
+    public static final int MAX_REPORTED_ERRORS = 1000;
+
+    // Properties ---------------------------------------------------------------------------------
+    private long processedRows;
+    private long importedRows;
+    private long failedRows;
+    private boolean errorsTruncated;
+    private List<ImportRowErrorDTO> errors = new ArrayList<>();
+
+    // Getters/setters ----------------------------------------------------------------------------
+    public long getProcessedRows() { return processedRows; }
+    public void setProcessedRows(long processedRows) { this.processedRows = processedRows; }
+
+    public long getImportedRows() { return importedRows; }
+    public void setImportedRows(long importedRows) { this.importedRows = importedRows; }
+
+    public long getFailedRows() { return failedRows; }
+    public void setFailedRows(long failedRows) { this.failedRows = failedRows; }
+
+    public boolean isErrorsTruncated() { return errorsTruncated; }
+    public void setErrorsTruncated(boolean errorsTruncated) { this.errorsTruncated = errorsTruncated; }
+
+    public List<ImportRowErrorDTO> getErrors() { return errors; }
+    public void setErrors(List<ImportRowErrorDTO> errors) { this.errors = errors; }
+
+    // Constructors -------------------------------------------------------------------------------
+    public ImportReportDTO() {
+    }
+
+    // Actions ------------------------------------------------------------------------------------
+
+    /**
+     * Records successfully imported rows.
+     *
+     * @param count the number of imported rows.
+     */
+    public synchronized void addImported(int count) {
+        this.processedRows += count;
+        this.importedRows += count;
+    }
+
+    /**
+     * Records a rejected row.
+     *
+     * @param error the description of the rejected row.
+     */
+    public synchronized void addError(ImportRowErrorDTO error) {
+        this.processedRows++;
+        this.failedRows++;
+        if (errors.size() < MAX_REPORTED_ERRORS)
+            errors.add(error);
+        else
+            errorsTruncated = true;
+    }
+
+    /**
+     * Copies the current state of the report.
+     *
+     * @return the copy of the report.
+     */
+    public synchronized ImportReportDTO snapshot() {
+        ImportReportDTO copy = new ImportReportDTO();
+        copy.processedRows = processedRows;
+        copy.importedRows = importedRows;
+        copy.failedRows = failedRows;
+        copy.errorsTruncated = errorsTruncated;
+        copy.errors = new ArrayList<>(errors);
+        return copy;
+    }
+}
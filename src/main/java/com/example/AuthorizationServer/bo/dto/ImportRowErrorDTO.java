@@ -0,0 +1,32 @@
+package com.example.AuthorizationServer.bo.dto;
+
+/**
+ * Data transfer object describing why a single row of a bulk user import was rejected.
+ */
+public class ImportRowErrorDTO {
+
+    // Properties ---------------------------------------------------------------------------------
+    private long row;
+    private String username;
+    private String message;
+
+    // Getters/setters ----------------------------------------------------------------------------
+    public long getRow() { return row; }
+    public void setRow(long row) { this.row = row; }
+
+    public String getUsername() { return username; }
+    public void setUsername(String username) { this.username = username; }
+
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+
+    // Constructors -------------------------------------------------------------------------------
+    public ImportRowErrorDTO() {
+    }
+
+    public ImportRowErrorDTO(long row, String username, String message) {
+        this.row = row;
+        this.username = username;
+        this.message = message;
+    }
+}
@@ -13,10 +13,16 @@ public class OrganizationTreeNodeDTO extends OrganizationDTO {
     // Properties ---------------------------------------------------------------------------------
     List<OrganizationTreeNodeDTO> subOrganizations;
 
+    // Number of direct sub organizations, including those left out of subOrganizations by a depth limit
+    int childCount;
+
     // Getters/setters ----------------------------------------------------------------------------
     public List<OrganizationTreeNodeDTO> getSubOrganizations() { return subOrganizations; }
     public void setSubOrganizations(List<OrganizationTreeNodeDTO> subOrganizations) { this.subOrganizations = subOrganizations; }
 
+    public int getChildCount() { return childCount; }
+    public void setChildCount(int childCount) { this.childCount = childCount; }
+
     // Constructors -------------------------------------------------------------------------------
     public OrganizationTreeNodeDTO() {
         super();
@@ -0,0 +1,50 @@
+package com.example.AuthorizationServer.bo.dto;
+
+/**
+ * Data transfer object describing the load on the password verification executor used by the token endpoint.
+ */
+public class PasswordVerificationStatsDTO {
+
+    // Properties ---------------------------------------------------------------------------------
+    private int threads;
+    private int activeThreads;
+    private int queueDepth;
+    private int queueCapacity;
+    private long completed;
+    private long rejected;
+    private long timedOut;
+    private double averageWaitMillis;
+    private double maxWaitMillis;
+
+    // Getters/setters ----------------------------------------------------------------------------
+    public int getThreads() { return threads; }
+    public void setThreads(int threads) { this.threads = threads; }
+
+    public int getActiveThreads() { return activeThreads; }
+    public void setActiveThreads(int activeThreads) { this.activeThreads = activeThreads; }
+
+    public int getQueueDepth() { return queueDepth; }
+    public void setQueueDepth(int queueDepth) { this.queueDepth = queueDepth; }
+
+    public int getQueueCapacity() { return queueCapacity; }
+    public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+
+    public long getCompleted() { return completed; }
+    public void setCompleted(long completed) { this.completed = completed; }
+
+    public long getRejected() { return rejected; }
+    public void setRejected(long rejected) { this.rejected = rejected; }
+
+    public long getTimedOut() { return timedOut; }
+    public void setTimedOut(long timedOut) { this.timedOut = timedOut; }
+
+    public double getAverageWaitMillis() { return averageWaitMillis; }
+    public void setAverageWaitMillis(double averageWaitMillis) { this.averageWaitMillis = averageWaitMillis; }
+
+    public double getMaxWaitMillis() { return maxWaitMillis; }
+    public void setMaxWaitMillis(double maxWaitMillis) { this.maxWaitMillis = maxWaitMillis; }
+
+    // Constructors -------------------------------------------------------------------------------
+    public PasswordVerificationStatsDTO() {
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.AuthorizationServer.bo.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Represents the revocation of every token issued to a client before a point in time.
+ */
+@Entity
+@Table(name = "client_revocation")
+public class ClientRevocation implements Serializable {
+
+    // Constants ----------------------------------------------------------------------------------
+    private static final long serialVersionUID = 1L;
+
+    // Properties ---------------------------------------------------------------------------------
+    @Id
+    @Column(name = "client_revocation_client_id", updatable = false)
+    private String clientId;
+
+    // Epoch milliseconds. Tokens issued before this are revoked.
+    @Column(name = "client_revocation_revoked_before", nullable = false)
+    private Long revokedBefore;
+
+    // Getters/setters ----------------------------------------------------------------------------
+    public String getClientId() { return clientId; }
+    public void setClientId(String clientId) { this.clientId = clientId; }
+
+    public Long getRevokedBefore() { return revokedBefore; }
+    public void setRevokedBefore(Long revokedBefore) { this.revokedBefore = revokedBefore; }
+
+    // Constructors -------------------------------------------------------------------------------
+    public ClientRevocation() {
+    }
+
+    public ClientRevocation(String clientId, Long revokedBefore) {
+        this.clientId = clientId;
+        this.revokedBefore = revokedBefore;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.AuthorizationServer.bo.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Tombstone of a deleted organization, kept so that every node removes the organization from its
+ * OrganizationHierarchyIndex when it polls for changed organizations. Removed once every node has had time to poll it.
+ */
+@Entity
+@Table(name = "deleted_organization",
+        indexes = @Index(name = "idx_deleted_organization_deleted_at", columnList = "deleted_organization_deleted_at"))
+public class DeletedOrganization implements Serializable {
+
+    // Constants ----------------------------------------------------------------------------------
+    private static final long serialVersionUID = 1L;
+
+    // Properties ---------------------------------------------------------------------------------
+    @Id
+    @Column(name = "deleted_organization_id", updatable = false)
+    private Long organizationId;
+
+    // Epoch milliseconds
+    @Column(name = "deleted_organization_deleted_at", nullable = false)
+    private Long deletedAt;
+
+    // Getters/setters ----------------------------------------------------------------------------
+    public Long getOrganizationId() { return organizationId; }
+    public void setOrganizationId(Long organizationId) { this.organizationId = organizationId; }
+
+    public Long getDeletedAt() { return deletedAt; }
+    public void setDeletedAt(Long deletedAt) { this.deletedAt = deletedAt; }
+
+    // Constructors -------------------------------------------------------------------------------
+    public DeletedOrganization() {
+    }
+
+    public DeletedOrganization(Long organizationId, Long deletedAt) {
+        this.organizationId = organizationId;
+        this.deletedAt = deletedAt;
+    }
+}
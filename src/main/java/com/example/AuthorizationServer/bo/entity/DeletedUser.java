@@ -0,0 +1,43 @@
+package com.example.AuthorizationServer.bo.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Tombstone of a deleted user, kept so that other nodes learn the final security stamp of the user when they poll for
+ * changed stamps and stop accepting the tokens of the user. Removed once every token issued before the deletion has
+ * expired.
+ */
+@Entity
+@Table(name = "deleted_user",
+        indexes = @Index(name = "idx_deleted_user_security_stamp", columnList = "deleted_user_security_stamp"))
+public class DeletedUser implements Serializable {
+
+    // Constants ----------------------------------------------------------------------------------
+    private static final long serialVersionUID = 1L;
+
+    // Properties ---------------------------------------------------------------------------------
+    @Id
+    @Column(name = "deleted_user_id", updatable = false)
+    private Long userId;
+
+    // The stamp of the user bumped at deletion, so every token of the user is older
+    @Column(name = "deleted_user_security_stamp", nullable = false)
+    private Long securityStamp;
+
+    // Getters/setters ----------------------------------------------------------------------------
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public Long getSecurityStamp() { return securityStamp; }
+    public void setSecurityStamp(Long securityStamp) { this.securityStamp = securityStamp; }
+
+    // Constructors -------------------------------------------------------------------------------
+    public DeletedUser() {
+    }
+
+    public DeletedUser(Long userId, Long securityStamp) {
+        this.userId = userId;
+        this.securityStamp = securityStamp;
+    }
+}
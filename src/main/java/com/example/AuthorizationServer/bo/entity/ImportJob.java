@@ -0,0 +1,84 @@
+package com.example.AuthorizationServer.bo.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Represents the status of an asynchronous bulk user import job, so that it can be polled through any node. Written by
+ * the node running the job when it starts and finishes, and periodically while it runs.
+ */
+@Entity
+@Table(name = "import_job", indexes = @Index(name = "idx_import_job_finished", columnList = "import_job_finished"))
+public class ImportJob implements Serializable {
+
+    // Constants ----------------------------------------------------------------------------------
+    private static final long serialVersionUID = 1L;
+
+    // Properties ---------------------------------------------------------------------------------
+    @Id
+    @Column(name = "import_job_id", updatable = false, length = 36)
+    private String id;
+
+    // Username of the admin who submitted the job
+    @Column(name = "import_job_owner", updatable = false, nullable = false)
+    private String owner;
+
+    @Column(name = "import_job_status", nullable = false, length = 16)
+    private String status;
+
+    @Column(name = "import_job_message", length = 1000)
+    private String message;
+
+    // Epoch milliseconds
+    @Column(name = "import_job_submitted", updatable = false, nullable = false)
+    private Long submitted;
+
+    // Epoch milliseconds
+    @Column(name = "import_job_started")
+    private Long started;
+
+    // Epoch milliseconds
+    @Column(name = "import_job_finished")
+    private Long finished;
+
+    // Epoch milliseconds of the last write by the node running the job
+    @Column(name = "import_job_updated", nullable = false)
+    private Long updated;
+
+    // The import report as JSON
+    @Lob
+    @Column(name = "import_job_report", columnDefinition = "longtext")
+    private String report;
+
+    // Getters/setters ----------------------------------------------------------------------------
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getOwner() { return owner; }
+    public void setOwner(String owner) { this.owner = owner; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+
+    public Long getSubmitted() { return submitted; }
+    public void setSubmitted(Long submitted) { this.submitted = submitted; }
+
+    public Long getStarted() { return started; }
+    public void setStarted(Long started) { this.started = started; }
+
+    public Long getFinished() { return finished; }
+    public void setFinished(Long finished) { this.finished = finished; }
+
+    public Long getUpdated() { return updated; }
+    public void setUpdated(Long updated) { this.updated = updated; }
+
+    public String getReport() { return report; }
+    public void setReport(String report) { this.report = report; }
+
+    // Constructors -------------------------------------------------------------------------------
+    public ImportJob() {
+    }
+}
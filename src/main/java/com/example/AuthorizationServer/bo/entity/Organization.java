@@ -1,5 +1,8 @@
 package com.example.AuthorizationServer.bo.entity;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 import javax.persistence.*;
 import java.io.Serializable;
 import java.util.HashSet;
@@ -11,14 +14,27 @@ import java.util.Set;
  * Represents an organization in the booking system to which users and rooms can belong.
  */
 @Entity
-@Table(name = "organizations")
+@Table(name = "organizations", indexes = {@Index(name = "idx_organizations_path", columnList = "org_path"),
+        @Index(name = "idx_organizations_changed_at", columnList = "org_changed_at")})
 public class Organization implements Serializable {
     // Constants ----------------------------------------------------------------------------------
     private static final long serialVersionUID = 1L;
 
     // Properties ---------------------------------------------------------------------------------
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Ids are allocated in pooled blocks from the id_generator table so that inserts can be JDBC batched. Ids that
+    // are already set, see OrganizationIdAllocator, are kept. The initial value matches the JPA table generator this
+    // replaced, whose initial value 1 Hibernate translates to 2.
+    @GeneratedValue(generator = "organization_id")
+    @GenericGenerator(name = "organization_id",
+            strategy = "com.example.AuthorizationServer.utility.PreassignedIdTableGenerator", parameters = {
+            @Parameter(name = "table_name", value = "id_generator"),
+            @Parameter(name = "segment_column_name", value = "sequence_name"),
+            @Parameter(name = "value_column_name", value = "next_val"),
+            @Parameter(name = "segment_value", value = "organization"),
+            @Parameter(name = "initial_value", value = "2"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled")})
     @Column(name="org_id", updatable=false)
     private Long id;
 
@@ -34,6 +50,10 @@ public class Organization implements Serializable {
     @Column(name="org_enabled", nullable = false)
     private Boolean enabled;
 
+    // Epoch milliseconds of the last write, polled by OrganizationHierarchyIndex on every node, see touch
+    @Column(name="org_changed_at", nullable = false, columnDefinition = "bigint default 0")
+    private Long changedAt = 0L;
+
     // Getters/setters ----------------------------------------------------------------------------
     public Set<User> getUsers() { return users; }
     public void setUsers(Set<User> users) { this.users = users; }
@@ -50,6 +70,9 @@ public class Organization implements Serializable {
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
 
+    public Long getChangedAt() { return changedAt; }
+    public void setChangedAt(Long changedAt) { this.changedAt = changedAt; }
+
     // Constructors -------------------------------------------------------------------------------
     public Organization() {
         this.path = "";
@@ -67,12 +90,23 @@ public class Organization implements Serializable {
         this.enabled = true;
     }
 
-    public Organization(String name, Organization parent) {
+    // The id must be allocated up front, see OrganizationIdAllocator. Without a parent it is a root organization.
+    public Organization(Long id, String name, Organization parent) {
+        this.id = id;
         this.name = name;
-        this.path = parent.path + "." + getId();
+        if (parent == null || parent.path == null || parent.path.isEmpty())
+            this.path = id.toString();
+        else
+            this.path = parent.path + "." + id;
         this.enabled = true;
     }
 
+    @PrePersist
+    @PreUpdate
+    private void touch() {
+        this.changedAt = System.currentTimeMillis();
+    }
+
     public void addUser(User user) {
         users.add(user);
     }
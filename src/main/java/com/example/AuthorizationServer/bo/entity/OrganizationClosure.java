@@ -0,0 +1,84 @@
+package com.example.AuthorizationServer.bo.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Represents one ancestor and descendant pair of the organization hierarchy, as used by the closure table hierarchy
+ * engine. Every organization is its own ancestor at depth zero, its parent is an ancestor at depth one and so on.
+ */
+@Entity
+@Table(name = "organization_closure", indexes = {
+        @Index(name = "idx_organization_closure_descendant", columnList = "closure_descendant_id, closure_depth")})
+@IdClass(OrganizationClosure.Key.class)
+public class OrganizationClosure implements Serializable {
+
+    // Constants ----------------------------------------------------------------------------------
+    private static final long serialVersionUID = 1L;
+
+    // Properties ---------------------------------------------------------------------------------
+    @Id
+    @Column(name = "closure_ancestor_id", updatable = false)
+    private Long ancestorId;
+
+    @Id
+    @Column(name = "closure_descendant_id", updatable = false)
+    private Long descendantId;
+
+    @Column(name = "closure_depth", nullable = false)
+    private Integer depth;
+
+    // Getters/setters ----------------------------------------------------------------------------
+    public Long getAncestorId() { return ancestorId; }
+    public void setAncestorId(Long ancestorId) { this.ancestorId = ancestorId; }
+
+    public Long getDescendantId() { return descendantId; }
+    public void setDescendantId(Long descendantId) { this.descendantId = descendantId; }
+
+    public Integer getDepth() { return depth; }
+    public void setDepth(Integer depth) { this.depth = depth; }
+
+    // Constructors -------------------------------------------------------------------------------
+    public OrganizationClosure() {
+    }
+
+    public OrganizationClosure(Long ancestorId, Long descendantId, Integer depth) {
+        this.ancestorId = ancestorId;
+        this.descendantId = descendantId;
+        this.depth = depth;
+    }
+
+    /**
+     * Composite primary key of an ancestor and descendant pair.
+     */
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Long ancestorId;
+        private Long descendantId;
+
+        public Key() {
+        }
+
+        public Key(Long ancestorId, Long descendantId) {
+            this.ancestorId = ancestorId;
+            this.descendantId = descendantId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return Objects.equals(ancestorId, key.ancestorId) && Objects.equals(descendantId, key.descendantId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(ancestorId, descendantId);
+        }
+    }
+}
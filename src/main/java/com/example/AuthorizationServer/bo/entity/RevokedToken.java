@@ -0,0 +1,50 @@
+package com.example.AuthorizationServer.bo.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Represents a revoked access or refresh token, identified by its jti. Kept until the token would have expired.
+ */
+@Entity
+@Table(name = "revoked_token", indexes = {
+        @Index(name = "idx_revoked_token_expires_at", columnList = "revoked_token_expires_at"),
+        @Index(name = "idx_revoked_token_revoked_at", columnList = "revoked_token_revoked_at")})
+public class RevokedToken implements Serializable {
+
+    // Constants ----------------------------------------------------------------------------------
+    private static final long serialVersionUID = 1L;
+
+    // Properties ---------------------------------------------------------------------------------
+    @Id
+    @Column(name = "revoked_token_jti", updatable = false)
+    private String jti;
+
+    // Epoch milliseconds
+    @Column(name = "revoked_token_expires_at", nullable = false)
+    private Long expiresAt;
+
+    // Epoch milliseconds
+    @Column(name = "revoked_token_revoked_at", nullable = false)
+    private Long revokedAt;
+
+    // Getters/setters ----------------------------------------------------------------------------
+    public String getJti() { return jti; }
+    public void setJti(String jti) { this.jti = jti; }
+
+    public Long getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Long expiresAt) { this.expiresAt = expiresAt; }
+
+    public Long getRevokedAt() { return revokedAt; }
+    public void setRevokedAt(Long revokedAt) { this.revokedAt = revokedAt; }
+
+    // Constructors -------------------------------------------------------------------------------
+    public RevokedToken() {
+    }
+
+    public RevokedToken(String jti, Long expiresAt, Long revokedAt) {
+        this.jti = jti;
+        this.expiresAt = expiresAt;
+        this.revokedAt = revokedAt;
+    }
+}
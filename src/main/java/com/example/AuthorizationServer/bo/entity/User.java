@@ -1,5 +1,7 @@
 package com.example.AuthorizationServer.bo.entity;
 
+import org.hibernate.annotations.BatchSize;
+
 import javax.persistence.*;
 import java.io.Serializable;
 import java.util.HashSet;
@@ -12,7 +14,7 @@ import java.util.Set;
  * Represents a user of the booking system.
  */
 @Entity
-@Table(name = "user")
+@Table(name = "user", indexes = @Index(name = "idx_user_security_stamp", columnList = "user_security_stamp"))
 public class User implements Serializable {
 
     // Constants ----------------------------------------------------------------------------------
@@ -20,7 +22,10 @@ public class User implements Serializable {
 
     // Properties ---------------------------------------------------------------------------------
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Ids are allocated in pooled blocks from the id_generator table so that inserts can be JDBC batched
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "user_id")
+    @TableGenerator(name = "user_id", table = "id_generator", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "user", initialValue = 1, allocationSize = 50)
     @Column(name="user_id", updatable=false)
     private Long id;
 
@@ -42,8 +47,13 @@ public class User implements Serializable {
     @Column(name="user_enabled", nullable = false, columnDefinition = "boolean default true")
     private Boolean enabled;
 
+    // Changed whenever the information embedded in issued tokens changes, see bumpSecurityStamp
+    @Column(name="user_security_stamp", nullable = false, columnDefinition = "bigint default 0")
+    private Long securityStamp = 0L;
+
     @ManyToMany(fetch = FetchType.EAGER)
     @JoinColumn(name = "org_id")
+    @BatchSize(size = 50)
     private Set<Organization> organizations = new HashSet<>();
 
     // Getters/setters ----------------------------------------------------------------------------
@@ -72,6 +82,9 @@ public class User implements Serializable {
     public String getRole() { return role; }
     public void setRole(String role) { this.role = role; }
 
+    public Long getSecurityStamp() { return securityStamp; }
+    public void setSecurityStamp(Long securityStamp) { this.securityStamp = securityStamp; }
+
     // Constructors -------------------------------------------------------------------------------
     public User() {
         this.organizations = new HashSet<>();
@@ -102,6 +115,15 @@ public class User implements Serializable {
         this.organizations.remove(org);
     }
 
+    /**
+     * Moves the security stamp forward. The new stamp is the current time in milliseconds, or the old stamp plus one if
+     * that is larger, so stamps only ever increase even if clocks differ between nodes.
+     */
+    public void bumpSecurityStamp() {
+        long current = securityStamp == null ? 0 : securityStamp;
+        this.securityStamp = Math.max(current + 1, System.currentTimeMillis());
+    }
+
     @Override
     public String toString() {
         return "User{" +
@@ -112,6 +134,7 @@ public class User implements Serializable {
                 ", password='" + password + '\'' +
                 ", role='" + role + '\'' +
                 ", enabled=" + enabled +
+                ", securityStamp=" + securityStamp +
                 ", organizations=" + organizations +
                 '}';
     }
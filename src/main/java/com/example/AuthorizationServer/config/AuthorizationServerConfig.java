@@ -1,24 +1,35 @@
 package com.example.AuthorizationServer.config;
 
+import com.example.AuthorizationServer.security.CachingJwtTokenStore;
 import com.example.AuthorizationServer.security.CustomTokenConverter;
 import com.example.AuthorizationServer.security.CustomUserDetailsService;
+import com.example.AuthorizationServer.security.JitteredTokenServices;
+import com.example.AuthorizationServer.security.JwtKeyProvider;
+import com.example.AuthorizationServer.security.OrganizationClaimMode;
+import com.example.AuthorizationServer.security.SecurityStampRegistry;
+import com.example.AuthorizationServer.security.SnapshotRefreshAuthenticationProvider;
+import com.example.AuthorizationServer.security.TokenRevocationList;
+import com.example.AuthorizationServer.service.OrganizationHierarchyIndex;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.oauth2.config.annotation.configurers.ClientDetailsServiceConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.AuthorizationServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableAuthorizationServer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerEndpointsConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerSecurityConfigurer;
-import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
 import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
-import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.CorsFilter;
 
+import java.util.Collections;
+
 /**
  * @author Jonas Fredén-Lundvall (jonlundv@kth.se)
  */
@@ -30,21 +41,70 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
 
     private final CustomUserDetailsService customUserDetailsService;
 
+    private final SecurityStampRegistry securityStampRegistry;
+
+    private final TokenRevocationList tokenRevocationList;
+
     private final BCryptPasswordEncoder bCryptPasswordEncoder;
 
+    private final JwtKeyProvider jwtKeyProvider;
+
+    private final OrganizationHierarchyIndex hierarchyIndex;
+
+    private final OrganizationClaimMode organizationClaimMode;
+
+    private final int decodeCacheMaxSize;
+
+    private final long decodeCacheMaxTtlSeconds;
+
+    private final double expiryJitter;
+
+    private final double refreshAtFraction;
+
+    private final int serviceTokenCacheMaxSize;
+
+    private final long serviceTokenReuseSeconds;
+
     @Autowired
-    public AuthorizationServerConfig(AuthenticationManager authenticationManager, CustomUserDetailsService customUserDetailsService, BCryptPasswordEncoder bCryptPasswordEncoder) {
+    public AuthorizationServerConfig(AuthenticationManager authenticationManager, CustomUserDetailsService customUserDetailsService, SecurityStampRegistry securityStampRegistry, TokenRevocationList tokenRevocationList,
+                                     BCryptPasswordEncoder bCryptPasswordEncoder,
+                                     JwtKeyProvider jwtKeyProvider, OrganizationHierarchyIndex hierarchyIndex,
+                                     @Value("${authserver.jwt.org-claims:full}") String organizationClaimMode,
+                                     @Value("${authserver.jwt.decode-cache.max-size:10000}") int decodeCacheMaxSize,
+                                     @Value("${authserver.jwt.decode-cache.max-ttl-seconds:600}") long decodeCacheMaxTtlSeconds,
+                                     @Value("${authserver.jwt.expiry-jitter:0.1}") double expiryJitter,
+                                     @Value("${authserver.jwt.refresh-at-fraction:0.8}") double refreshAtFraction,
+                                     @Value("${authserver.service-token.cache-max-size:1000}") int serviceTokenCacheMaxSize,
+                                     @Value("${authserver.service-token.reuse-seconds:60}") long serviceTokenReuseSeconds) {
         this.authenticationManager = authenticationManager;
         this.customUserDetailsService = customUserDetailsService;
+        this.securityStampRegistry = securityStampRegistry;
+        this.tokenRevocationList = tokenRevocationList;
         this.bCryptPasswordEncoder = bCryptPasswordEncoder;
+        this.jwtKeyProvider = jwtKeyProvider;
+        this.hierarchyIndex = hierarchyIndex;
+        this.organizationClaimMode = OrganizationClaimMode.valueOf(organizationClaimMode.trim().toUpperCase());
+        this.decodeCacheMaxSize = decodeCacheMaxSize;
+        this.decodeCacheMaxTtlSeconds = decodeCacheMaxTtlSeconds;
+        this.expiryJitter = expiryJitter;
+        this.refreshAtFraction = refreshAtFraction;
+        this.serviceTokenCacheMaxSize = serviceTokenCacheMaxSize;
+        this.serviceTokenReuseSeconds = serviceTokenReuseSeconds;
     }
 
     /**
      * {@inheritDoc}
      */
     @Bean
-    public TokenStore tokenStore(){
-        return new JwtTokenStore(accessTokenConverter());
+    public CachingJwtTokenStore tokenStore(){
+        // Verified tokens are cached until they expire, see CachingJwtTokenStore
+        CachingJwtTokenStore tokenStore = new CachingJwtTokenStore((CustomTokenConverter) accessTokenConverter(),
+                decodeCacheMaxSize, decodeCacheMaxTtlSeconds * 1000);
+        tokenStore.setSecurityStampRegistry(securityStampRegistry);
+        tokenStore.setTokenRevocationList(tokenRevocationList);
+        // Client credentials tokens are handed out again for a while instead of signing a new one for every request
+        tokenStore.setServiceTokenReuse(serviceTokenCacheMaxSize, serviceTokenReuseSeconds * 1000);
+        return tokenStore;
     }
 
     /**
@@ -53,7 +113,11 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
     @Bean
     public JwtAccessTokenConverter accessTokenConverter() {
         CustomTokenConverter tokenConverter = new CustomTokenConverter();
-        tokenConverter.setSigningKey("e53969904d");
+        // Tokens are signed with RS256 so that resource servers can verify them with the published JWKS
+        tokenConverter.setKeyProvider(jwtKeyProvider);
+        tokenConverter.setOrganizationClaimMode(organizationClaimMode);
+        tokenConverter.setHierarchyIndex(hierarchyIndex);
+        tokenConverter.setRefreshAtFraction(refreshAtFraction);
         return tokenConverter;
     }
 
@@ -85,12 +149,19 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
     @Override
     public void configure(ClientDetailsServiceConfigurer clients) throws Exception {
         clients.inMemory()
+                // Clients may override authserver.jwt.expiry-jitter with additionalInformation("expiry_jitter=...")
                 .withClient("fooClientId").secret(bCryptPasswordEncoder.encode("secret"))
                 .authorizedGrantTypes("password", "authorization_code", "refresh_token").scopes("read","write")
                 .authorities("USER","ADMIN","SUPERADMIN")
                 .autoApprove(true)
                 .accessTokenValiditySeconds(180) // Access token is valid for 3 minutes.
-                .refreshTokenValiditySeconds(600); // Refresh token is valid for 10 minutes.
+                .refreshTokenValiditySeconds(600) // Refresh token is valid for 10 minutes.
+                    .and()
+                // Client for internal services, which authenticate as themselves rather than as a user.
+                .withClient("serviceClientId").secret(bCryptPasswordEncoder.encode("secret"))
+                .authorizedGrantTypes("client_credentials").scopes("read")
+                .authorities("SERVICE")
+                .accessTokenValiditySeconds(180); // Access token is valid for 3 minutes.
     }
 
     /**
@@ -100,8 +171,29 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
     public void configure(final AuthorizationServerEndpointsConfigurer endpoints) {
         endpoints
                 .tokenStore(tokenStore())
+                .tokenServices(tokenServices(endpoints))
                 .authenticationManager(authenticationManager)
                 .accessTokenConverter(accessTokenConverter())
                 .userDetailsService(customUserDetailsService);
     }
+
+    /**
+     * Creates the token services of the token endpoints. Same as the default token services except that the refresh
+     * token grant authenticates the user with a SnapshotRefreshAuthenticationProvider, and that the validity of issued
+     * tokens is jittered per client, see JitteredTokenServices.
+     */
+    private DefaultTokenServices tokenServices(AuthorizationServerEndpointsConfigurer endpoints) {
+        JitteredTokenServices tokenServices = new JitteredTokenServices();
+        tokenServices.setDefaultExpiryJitter(expiryJitter);
+        tokenServices.setTokenStore(tokenStore());
+        tokenServices.setTokenEnhancer(accessTokenConverter());
+        tokenServices.setSupportRefreshToken(true);
+        tokenServices.setReuseRefreshToken(true);
+        // The client details service is only given to the endpoints configurer after this configure method has run
+        tokenServices.setClientDetailsService(clientId ->
+                endpoints.getClientDetailsService().loadClientByClientId(clientId));
+        tokenServices.setAuthenticationManager(new ProviderManager(Collections.singletonList(
+                new SnapshotRefreshAuthenticationProvider(customUserDetailsService, securityStampRegistry, hierarchyIndex))));
+        return tokenServices;
+    }
 }
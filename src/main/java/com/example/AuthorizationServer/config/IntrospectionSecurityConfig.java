@@ -0,0 +1,84 @@
+package com.example.AuthorizationServer.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.client.ClientDetailsUserDetailsService;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Security configuration of the batch introspection endpoint. Like /oauth/check_token, callers authenticate as a
+ * client with http basic authentication rather than with a bearer token. Ordered after the authorization server
+ * endpoints and before the resource server, which would otherwise claim the path.
+ *
+ * Only the clients listed in authserver.introspection.allowed-clients may call the endpoint, since a response reveals
+ * the user and organizations behind every token in the batch. Other clients, such as service clients, are refused.
+ */
+@Configuration
+@Order(1)
+public class IntrospectionSecurityConfig extends WebSecurityConfigurerAdapter {
+
+    private final ClientDetailsService clientDetailsService;
+
+    private final BCryptPasswordEncoder bCryptPasswordEncoder;
+
+    private final Set<String> allowedClients;
+
+    @Autowired
+    public IntrospectionSecurityConfig(ClientDetailsService clientDetailsService,
+                                       BCryptPasswordEncoder bCryptPasswordEncoder,
+                                       @Value("${authserver.introspection.allowed-clients:fooClientId}")
+                                               String[] allowedClients) {
+        this.clientDetailsService = clientDetailsService;
+        this.bCryptPasswordEncoder = bCryptPasswordEncoder;
+        this.allowedClients = new HashSet<>(Arrays.asList(allowedClients));
+    }
+
+    /**
+     * Checks if an authenticated client may introspect tokens.
+     *
+     * @param authentication the authentication of the client.
+     * @return true if the client id is in the allowed clients.
+     */
+    public boolean isAllowedClient(Authentication authentication) {
+        return authentication != null && allowedClients.contains(authentication.getName());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void configure(HttpSecurity http) throws Exception {
+        http
+                .requestMatchers()
+                    .antMatchers("/oauth/check_tokens")
+                    .and()
+                .csrf().disable().sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                    .and()
+                .httpBasic()
+                    .and()
+                .authorizeRequests()
+                .anyRequest()
+                    .access("isAuthenticated() and @introspectionSecurityConfig.isAllowedClient(authentication)");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void configure(AuthenticationManagerBuilder auth) throws Exception {
+        auth.userDetailsService(new ClientDetailsUserDetailsService(clientDetailsService))
+                .passwordEncoder(bCryptPasswordEncoder);
+    }
+}
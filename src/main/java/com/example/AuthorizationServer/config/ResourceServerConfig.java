@@ -32,9 +32,12 @@ public class ResourceServerConfig extends ResourceServerConfigurerAdapter {
                 .cors()
                     .and()
                 .authorizeRequests()
+                    .antMatchers("/.well-known/jwks.json").permitAll()
                     .antMatchers("/organizations/**").hasAnyAuthority("ADMIN", "SUPERADMIN")
                     .antMatchers("/users/verify").hasAnyAuthority("USER", "ADMIN", "SUPERADMIN") // Maybe should be just USER?
                     .antMatchers("/users/admins/**").hasAuthority("SUPERADMIN")
+                    .antMatchers("/metrics/**").hasAuthority("SUPERADMIN")
+                    .antMatchers("/revocations/**").hasAuthority("SUPERADMIN")
                     .antMatchers("/users/**").hasAuthority("ADMIN")
                 .anyRequest().authenticated();
     }
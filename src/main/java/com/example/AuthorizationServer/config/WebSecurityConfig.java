@@ -1,6 +1,8 @@
 package com.example.AuthorizationServer.config;
 
 import com.example.AuthorizationServer.security.CustomUserDetailsService;
+import com.example.AuthorizationServer.security.PasswordVerificationExecutor;
+import com.example.AuthorizationServer.security.PooledBCryptPasswordEncoder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -30,6 +32,13 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
         this.customUserDetailsService = customUserDetailsService;
     }
 
+    private PasswordVerificationExecutor passwordVerificationExecutor;
+
+    @Autowired
+    public void setPasswordVerificationExecutor(PasswordVerificationExecutor passwordVerificationExecutor) {
+        this.passwordVerificationExecutor = passwordVerificationExecutor;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -75,11 +84,13 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 
     /**
      * {@inheritDoc}
+     *
+     * Passwords are verified on the bounded password verification executor rather than on the request thread.
      */
     @Bean
     public DaoAuthenticationProvider authenticationProvider() {
         DaoAuthenticationProvider daoAuthenticationProvider = new DaoAuthenticationProvider();
-        daoAuthenticationProvider.setPasswordEncoder(bCryptPasswordEncoder());
+        daoAuthenticationProvider.setPasswordEncoder(new PooledBCryptPasswordEncoder(passwordVerificationExecutor));
         daoAuthenticationProvider.setUserDetailsService(customUserDetailsService);
         return daoAuthenticationProvider;
     }
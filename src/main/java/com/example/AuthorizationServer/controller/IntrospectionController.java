@@ -0,0 +1,43 @@
+package com.example.AuthorizationServer.controller;
+
+import com.example.AuthorizationServer.service.TokenIntrospectionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Controller for introspecting batches of access tokens, for gateways that would otherwise call /oauth/check_token
+ * once per token. Access is upheld through http security configuration in IntrospectionSecurityConfig.
+ */
+@RestController
+public class IntrospectionController {
+
+    private final TokenIntrospectionService tokenIntrospectionService;
+
+    @Autowired
+    public IntrospectionController(TokenIntrospectionService tokenIntrospectionService) {
+        this.tokenIntrospectionService = tokenIntrospectionService;
+    }
+
+    /**
+     * Introspect a batch of access tokens. The response holds one entry per token in the order they were given: the
+     * claims of the token as returned by /oauth/check_token, or {"active": false} if the token is not valid.
+     *
+     * @param tokens the encoded tokens.
+     * @return the response entity.
+     */
+    @PostMapping("/oauth/check_tokens")
+    public ResponseEntity<?> checkTokens(@RequestBody List<String> tokens) {
+        if (tokens.size() > tokenIntrospectionService.getMaxBatchSize())
+            return new ResponseEntity<>("Unexpected error. At most " + tokenIntrospectionService.getMaxBatchSize() +
+                    " tokens can be introspected at once.", HttpStatus.PAYLOAD_TOO_LARGE);
+        List<Map<String, ?>> results = tokenIntrospectionService.introspect(tokens);
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+}
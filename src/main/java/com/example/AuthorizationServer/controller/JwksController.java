@@ -0,0 +1,38 @@
+package com.example.AuthorizationServer.controller;
+
+import com.example.AuthorizationServer.security.JwtKeyProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller publishing the JSON Web Key Set that resource servers use for verifying access tokens locally. The key
+ * set is public and may be cached by clients and proxies.
+ */
+@RestController
+public class JwksController {
+
+    private final JwtKeyProvider jwtKeyProvider;
+
+    @Autowired
+    public JwksController(JwtKeyProvider jwtKeyProvider) {
+        this.jwtKeyProvider = jwtKeyProvider;
+    }
+
+    /**
+     * Retrieve the JSON Web Key Set of all keys that currently valid access tokens may be signed with.
+     *
+     * @return the response entity.
+     */
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> getJwkSet() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(1, TimeUnit.HOURS).cachePublic())
+                .body(jwtKeyProvider.getJwkSet());
+    }
+}
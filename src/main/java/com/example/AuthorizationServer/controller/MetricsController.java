@@ -0,0 +1,37 @@
+package com.example.AuthorizationServer.controller;
+
+import com.example.AuthorizationServer.bo.dto.PasswordVerificationStatsDTO;
+import com.example.AuthorizationServer.security.PasswordVerificationExecutor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Controller for REST API requests for operational metrics of the server. Only the superadmin role has access to this
+ * resource. General access is upheld through http security configuration in ResourceServerConfig.
+ */
+@RestController
+@RequestMapping("/metrics")
+public class MetricsController {
+
+    private final PasswordVerificationExecutor passwordVerificationExecutor;
+
+    @Autowired
+    public MetricsController(PasswordVerificationExecutor passwordVerificationExecutor) {
+        this.passwordVerificationExecutor = passwordVerificationExecutor;
+    }
+
+    /**
+     * Retrieve queue depth, wait time and rejection metrics of login password verification.
+     *
+     * @return the response entity.
+     */
+    @GetMapping("/password-verification")
+    public ResponseEntity<?> getPasswordVerificationStats() {
+        PasswordVerificationStatsDTO stats = passwordVerificationExecutor.getStats();
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+}
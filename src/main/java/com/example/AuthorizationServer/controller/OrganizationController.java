@@ -1,8 +1,10 @@
 package com.example.AuthorizationServer.controller;
 
+import com.example.AuthorizationServer.bo.dto.CursorPageDTO;
 import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
 import com.example.AuthorizationServer.bo.dto.OrganizationTreeNodeDTO;
 import com.example.AuthorizationServer.security.CustomUserDetails;
+import com.example.AuthorizationServer.service.OrganizationImportService;
 import com.example.AuthorizationServer.service.OrganizationService;
 import com.example.AuthorizationServer.utility.UserDetailExtractor;
 import org.slf4j.Logger;
@@ -13,7 +15,12 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -33,24 +40,47 @@ public class OrganizationController {
 
     private final OrganizationService orgService;
 
+    private final OrganizationImportService orgImportService;
+
     @Autowired
-    public OrganizationController(OrganizationService orgService) {
+    public OrganizationController(OrganizationService orgService, OrganizationImportService orgImportService) {
         this.orgService = orgService;
+        this.orgImportService = orgImportService;
     }
 
     /**
-     * Retrieve all organisations.
+     * Retrieve all organisations. Results are paginated by path using keyset pagination if a limit or a cursor is
+     * given, in which case the response carries the cursor of the next page. An empty cursor retrieves the first page.
      *
+     * @param limit the upper limit of how many organizations to retrieve.
+     * @param cursor the cursor returned with the previous page.
+     * @param withTotal whether to include the exact total number of organizations.
      * @return the response entity.
      */
     @GetMapping("/")
-    public ResponseEntity<?> getAllOrganizations() {
+    public ResponseEntity<?> getAllOrganizations(@RequestParam(required = false) Integer limit,
+                                                 @RequestParam(required = false) String cursor,
+                                                 @RequestParam(required = false, defaultValue = "false") boolean withTotal) {
         CustomUserDetails user = UserDetailExtractor.extract((SecurityContextHolder.getContext()));
 
         // Only superadmin is authorized
         if(!user.getAuthorities().contains(new SimpleGrantedAuthority("SUPERADMIN")))
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
 
+        if (limit != null || cursor != null) {
+            int getLimit = 20;
+            if (limit != null)
+                getLimit = limit;
+
+            CursorPageDTO<OrganizationDTO> page;
+            try {
+                page = orgService.getOrganizationsPage(cursor, getLimit, withTotal);
+            } catch (IllegalArgumentException e) {
+                return new ResponseEntity<>("Unexpected error. Cursor or limit is not valid.", HttpStatus.BAD_REQUEST);
+            }
+            return new ResponseEntity<>(page, HttpStatus.OK);
+        }
+
         List<OrganizationDTO> organizationDTOS = orgService.getAllOrganizations();
         return new ResponseEntity<>(organizationDTOS, HttpStatus.OK);
     }
@@ -73,29 +103,47 @@ public class OrganizationController {
     }
 
     /**
-     * Retrieve the full organization tree.
+     * Retrieve the full organization tree. Every node carries the number of its direct sub organizations, so that
+     * nodes beyond the depth can be fetched later by expanding them or through the children endpoint.
      *
+     * @param depth the number of levels below the root organizations to include, all levels if not given.
+     * @param enabledOnly whether to leave out disabled organizations along with everything below them.
+     * @param expand the ids of organizations whose sub organizations are included regardless of the depth.
      * @return the response entity.
      */
     @GetMapping("/trees/")
-    public ResponseEntity<?> getFullOrganizationTree() {
+    public ResponseEntity<?> getFullOrganizationTree(@RequestParam(required = false) Integer depth,
+                                                     @RequestParam(required = false, defaultValue = "false") boolean enabledOnly,
+                                                     @RequestParam(required = false) List<Long> expand) {
         CustomUserDetails user = UserDetailExtractor.extract((SecurityContextHolder.getContext()));
 
         // Only superadmin is authorized
         if(!user.getAuthorities().contains(new SimpleGrantedAuthority("SUPERADMIN")))
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
 
-        List<OrganizationTreeNodeDTO> tree = orgService.getFullOrganizationTree();
+        if (depth != null && depth < 0)
+            return new ResponseEntity<>("Unexpected error. Depth must not be negative.", HttpStatus.BAD_REQUEST);
+
+        List<OrganizationTreeNodeDTO> tree = orgService.getFullOrganizationTree(depth, enabledOnly,
+                expand == null ? Collections.emptySet() : expand);
         return new ResponseEntity<>(tree, HttpStatus.OK);
     }
 
     /**
-     * Retrieve the organization sub tree of given organization.
+     * Retrieve the organization sub tree of given organization. Takes the same parameters as the full organization
+     * tree.
      *
+     * @param id the id of the root organization of the sub tree.
+     * @param depth the number of levels below the root organization to include, all levels if not given.
+     * @param enabledOnly whether to leave out disabled organizations along with everything below them.
+     * @param expand the ids of organizations whose sub organizations are included regardless of the depth.
      * @return the response entity.
      */
     @GetMapping("/trees/{id}")
-    public ResponseEntity<?> getOrganizationSubTree(@PathVariable Long id) {
+    public ResponseEntity<?> getOrganizationSubTree(@PathVariable Long id,
+                                                    @RequestParam(required = false) Integer depth,
+                                                    @RequestParam(required = false, defaultValue = "false") boolean enabledOnly,
+                                                    @RequestParam(required = false) List<Long> expand) {
         CustomUserDetails user = UserDetailExtractor.extract((SecurityContextHolder.getContext()));
 
         boolean authorized = false;
@@ -106,9 +154,9 @@ public class OrganizationController {
         } else {
             // Admin is authorized for organizations within its own root organization sub tree
             try {
-                OrganizationDTO rootParent = orgService.getRootParentOfOrganization(id);
+                Long rootParentId = orgService.getRootParentIdOfOrganization(id);
                 for (OrganizationDTO o : user.getOrganizations()) {
-                    if (o.getId().equals(rootParent.getId()))
+                    if (o.getId().equals(rootParentId))
                         authorized = true;
                 }
             } catch (NoSuchElementException e) {
@@ -116,14 +164,60 @@ public class OrganizationController {
             }
         }
 
+        if (depth != null && depth < 0)
+            return new ResponseEntity<>("Unexpected error. Depth must not be negative.", HttpStatus.BAD_REQUEST);
+
         if(authorized) {
-            List<OrganizationTreeNodeDTO> tree = orgService.getOrganizationSubTree(id);
+            List<OrganizationTreeNodeDTO> tree = orgService.getOrganizationSubTree(id, depth, enabledOnly,
+                    expand == null ? Collections.emptySet() : expand);
             return new ResponseEntity<>(tree, HttpStatus.OK);
         }
 
         return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
     }
 
+    /**
+     * Retrieve the direct sub organizations of an organization as tree nodes without sub trees, each with the number
+     * of its own sub organizations, for expanding an organization tree one level at a time.
+     *
+     * @param id the id of the organization.
+     * @param enabledOnly whether to leave out disabled organizations.
+     * @return the response entity.
+     */
+    @GetMapping("/trees/{id}/children/")
+    public ResponseEntity<?> getChildNodesOfOrganization(@PathVariable Long id,
+                                                         @RequestParam(required = false, defaultValue = "false") boolean enabledOnly) {
+        CustomUserDetails user = UserDetailExtractor.extract((SecurityContextHolder.getContext()));
+
+        boolean authorized = false;
+
+        if(user.getAuthorities().contains(new SimpleGrantedAuthority("SUPERADMIN"))) {
+            // Superadmin is always authorized
+            authorized = true;
+        } else {
+            // Admin is authorized for organizations within its own root organization sub tree
+            try {
+                Long rootParentId = orgService.getRootParentIdOfOrganization(id);
+                for (OrganizationDTO o : user.getOrganizations()) {
+                    if (o.getId().equals(rootParentId))
+                        authorized = true;
+                }
+            } catch (NoSuchElementException e) {
+                return new ResponseEntity<>("Unexpected error. Organization not found.", HttpStatus.NOT_FOUND);
+            }
+        }
+
+        if (!authorized)
+            return new ResponseEntity<>("Unexpected error. Not authorized.", HttpStatus.UNAUTHORIZED);
+
+        try {
+            List<OrganizationTreeNodeDTO> children = orgService.getChildNodesOfOrganization(id, enabledOnly);
+            return new ResponseEntity<>(children, HttpStatus.OK);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>("Unexpected error. Organization not found.", HttpStatus.NOT_FOUND);
+        }
+    }
+
     /**
      * Get a single organization by id.
      *
@@ -198,10 +292,10 @@ public class OrganizationController {
         }
 
         try {
-            OrganizationDTO rootParent = orgService.getRootParentOfOrganization(parentId);
+            Long rootParentId = orgService.getRootParentIdOfOrganization(parentId);
             // Admin is only authorized to create sub organizations in own root parent organization
             for (OrganizationDTO o: user.getOrganizations()) {
-                if (o.getId().equals(rootParent.getId())) {
+                if (o.getId().equals(rootParentId)) {
                     OrganizationDTO orgInDb = orgService.addParentToOrganization(organizationDto, parentId);
                     return new ResponseEntity<>(orgInDb, HttpStatus.OK);
                 }
@@ -213,6 +307,63 @@ public class OrganizationController {
         return new ResponseEntity<>("Unexpected error. Not authorized.", HttpStatus.UNAUTHORIZED);
     }
 
+    /**
+     * Create a whole organization tree from a JSON tree node with nested sub organizations, in one transaction. Without
+     * a parent the tree becomes a new root organization, which only superadmin may create. Admin may import trees
+     * below organizations in its own root organization sub tree.
+     *
+     * @param tree the root node of the tree.
+     * @param parentId the id of the intended parent of the tree, if any.
+     * @return the response entity.
+     */
+    @PostMapping("/upload/json/")
+    public ResponseEntity<?> createOrganizationTreeFromJSON(@RequestBody OrganizationTreeNodeDTO tree,
+                                                            @RequestParam(required = false) Long parentId) {
+        CustomUserDetails user = UserDetailExtractor.extract(SecurityContextHolder.getContext());
+
+        try {
+            if (!isAuthorizedToImport(user, parentId))
+                return new ResponseEntity<>("Unexpected error. Not authorized.", HttpStatus.UNAUTHORIZED);
+            OrganizationTreeNodeDTO importedTree = orgImportService.importTree(tree, parentId);
+            return new ResponseEntity<>(importedTree, HttpStatus.OK);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>("Unexpected error. Organization not found.", HttpStatus.NOT_FOUND);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>("Unexpected error. " + e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Create organization trees from a csv file with the columns name and parent, in one transaction. Rows with an
+     * empty parent are the roots of the trees. Authorization is the same as for JSON trees.
+     *
+     * @param file the csv file.
+     * @param parentId the id of the intended parent of the trees, if any.
+     * @return the response entity.
+     */
+    @PostMapping("/upload/file/")
+    public ResponseEntity<?> createOrganizationTreesFromCSVFile(@RequestParam("file") MultipartFile file,
+                                                                @RequestParam(required = false) Long parentId) {
+        CustomUserDetails user = UserDetailExtractor.extract(SecurityContextHolder.getContext());
+
+        if(file.isEmpty())
+            return new ResponseEntity<>("Unexpected error. File is empty.", HttpStatus.NO_CONTENT);
+
+        try (Reader reader = new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8)) {
+            if (!isAuthorizedToImport(user, parentId))
+                return new ResponseEntity<>("Unexpected error. Not authorized.", HttpStatus.UNAUTHORIZED);
+            List<OrganizationTreeNodeDTO> importedTrees = orgImportService.importTreesFromCsv(reader, parentId);
+            return new ResponseEntity<>(importedTrees, HttpStatus.OK);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>("Unexpected error. Organization not found.", HttpStatus.NOT_FOUND);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>("Unexpected error during parsing. " + e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            return new ResponseEntity<>("Unexpected error. Could not read file.", HttpStatus.BAD_REQUEST);
+        }
+    }
+
     /**
      * Update an existing organization.
      *
@@ -225,23 +376,23 @@ public class OrganizationController {
                                                 @PathVariable Long id) {
         CustomUserDetails userDetails = UserDetailExtractor.extract(SecurityContextHolder.getContext());
 
-        OrganizationDTO rootParent;
+        Long rootParentId;
         boolean authorized = false;
 
         if(userDetails.getAuthorities().contains(new SimpleGrantedAuthority("SUPERADMIN"))) {
             // Superadmin is only allowed to update root organizations
-            rootParent = orgService.getRootParentOfOrganization(id);
+            rootParentId = orgService.getRootParentIdOfOrganization(id);
 
-            if(!rootParent.getId().equals(id))
+            if(!rootParentId.equals(id))
                 return new ResponseEntity<>("Unexpected error. Not authorized.", HttpStatus.UNAUTHORIZED);
             else
                 authorized = true;
 
         } else {
-            rootParent = orgService.getRootParentOfOrganization(id);
+            rootParentId = orgService.getRootParentIdOfOrganization(id);
             // Admin is only authorized to update organizations in its own organization sub tree
             for (OrganizationDTO o: userDetails.getOrganizations()) {
-                if(rootParent.getId().equals(o.getId()))
+                if(rootParentId.equals(o.getId()))
                     authorized = true;
             }
         }
@@ -273,9 +424,9 @@ public class OrganizationController {
         boolean childAuthorized = false;
         boolean parentAuthorized = false;
         // Admin is only authorized to update organizations in its own organization sub tree
-        OrganizationDTO rootParent = orgService.getRootParentOfOrganization(childId);
+        Long rootParentId = orgService.getRootParentIdOfOrganization(childId);
         for (OrganizationDTO o: user.getOrganizations()) {
-            if(rootParent.getId().equals(o.getId()))
+            if(rootParentId.equals(o.getId()))
                 childAuthorized = true;
             if(o.getId().equals(parentId))
                 parentAuthorized = true;
@@ -284,9 +435,15 @@ public class OrganizationController {
         if(!childAuthorized || !parentAuthorized)
             return new ResponseEntity<>("Unexpected error. Not authorized.", HttpStatus.UNAUTHORIZED);
 
-        OrganizationDTO updatedOrganization = orgService.addParentToOrganization(childId, parentId);
-
-        return new ResponseEntity<>(updatedOrganization, HttpStatus.OK);
+        try {
+            orgService.moveOrganization(childId, parentId);
+            OrganizationDTO updatedOrganization = orgService.getOrganizationById(childId);
+            return new ResponseEntity<>(updatedOrganization, HttpStatus.OK);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>("Unexpected error. Organization not found.", HttpStatus.NOT_FOUND);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>("Unexpected error. " + e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
     }
 
     /**
@@ -304,10 +461,10 @@ public class OrganizationController {
             return new ResponseEntity<>("Unexpected error. Not authorized.", HttpStatus.UNAUTHORIZED);
         }
 
-        OrganizationDTO rootParent = orgService.getRootParentOfOrganization(id);
+        Long rootParentId = orgService.getRootParentIdOfOrganization(id);
         // Admin is only authorized to view organizations in its own organization sub tree
         for (OrganizationDTO o: user.getOrganizations()) {
-            if(rootParent.getId().equals(o.getId())) {
+            if(rootParentId.equals(o.getId())) {
                 List<OrganizationDTO> children = orgService.getAllChildrenOfOrganization(id);
                 return new ResponseEntity<>(children, HttpStatus.OK);
             }
@@ -316,6 +473,45 @@ public class OrganizationController {
         return new ResponseEntity<>("Unexpected error. Not authorized.", HttpStatus.UNAUTHORIZED);
     }
 
+    /**
+     * Get the ancestors of an organization, ordered from its root organization to its parent.
+     *
+     * @param id the id of the organization.
+     * @return the response entity.
+     */
+    @GetMapping("{id}/ancestors/")
+    public ResponseEntity<?> getAncestorsOfOrganization(@PathVariable Long id) {
+        CustomUserDetails user = UserDetailExtractor.extract(SecurityContextHolder.getContext());
+
+        boolean authorized = false;
+
+        if(user.getAuthorities().contains(new SimpleGrantedAuthority("SUPERADMIN"))) {
+            // Superadmin is always authorized
+            authorized = true;
+        } else {
+            // Admin is only authorized for organizations in its own root organization sub tree
+            try {
+                Long rootParentId = orgService.getRootParentIdOfOrganization(id);
+                for (OrganizationDTO o: user.getOrganizations()) {
+                    if (o.getId().equals(rootParentId))
+                        authorized = true;
+                }
+            } catch (NoSuchElementException e) {
+                return new ResponseEntity<>("Unexpected error. Organization not found.", HttpStatus.NOT_FOUND);
+            }
+        }
+
+        if (!authorized)
+            return new ResponseEntity<>("Unexpected error. Not authorized.", HttpStatus.UNAUTHORIZED);
+
+        try {
+            List<OrganizationDTO> ancestors = orgService.getAncestorsOfOrganization(id);
+            return new ResponseEntity<>(ancestors, HttpStatus.OK);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>("Unexpected error. Organization not found.", HttpStatus.NOT_FOUND);
+        }
+    }
+
     /**
      * Delete an organization.
      *
@@ -326,23 +522,23 @@ public class OrganizationController {
     public ResponseEntity<?> deleteOrganization(@PathVariable Long id) {
         CustomUserDetails userDetails = UserDetailExtractor.extract(SecurityContextHolder.getContext());
 
-        OrganizationDTO rootParent;
+        Long rootParentId;
         boolean authorized = false;
 
         if(userDetails.getAuthorities().contains(new SimpleGrantedAuthority("SUPERADMIN"))) {
             // Superadmin is only allowed to delete root organizations
-            rootParent = orgService.getRootParentOfOrganization(id);
+            rootParentId = orgService.getRootParentIdOfOrganization(id);
 
-            if(!rootParent.getId().equals(id))
+            if(!rootParentId.equals(id))
                 return new ResponseEntity<>("Unexpected error. Not authorized.", HttpStatus.UNAUTHORIZED);
             else
                 authorized = true;
 
         } else {
-            rootParent = orgService.getRootParentOfOrganization(id);
+            rootParentId = orgService.getRootParentIdOfOrganization(id);
             // Admin is only authorized to delete organizations in its own organization sub tree
             for (OrganizationDTO o: userDetails.getOrganizations()) {
-                if(rootParent.getId().equals(o.getId()))
+                if(rootParentId.equals(o.getId()))
                     authorized = true;
             }
         }
@@ -361,4 +557,25 @@ public class OrganizationController {
             return new ResponseEntity<>("Unexpected error. Not authorized.", HttpStatus.UNAUTHORIZED);
         }
     }
+
+    /**
+     * Checks whether a user may import organization trees below a parent. Only superadmin may import new root
+     * organizations and only admin may import below organizations in its own root organization sub tree.
+     *
+     * @throws NoSuchElementException if the parent organization does not exist.
+     */
+    private boolean isAuthorizedToImport(CustomUserDetails user, Long parentId) {
+        boolean superAdmin = user.getAuthorities().contains(new SimpleGrantedAuthority("SUPERADMIN"));
+        if (parentId == null)
+            return superAdmin;
+        if (superAdmin)
+            return false;
+
+        Long rootParentId = orgService.getRootParentIdOfOrganization(parentId);
+        for (OrganizationDTO o: user.getOrganizations()) {
+            if (o.getId().equals(rootParentId))
+                return true;
+        }
+        return false;
+    }
 }
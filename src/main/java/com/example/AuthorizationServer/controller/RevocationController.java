@@ -0,0 +1,80 @@
+package com.example.AuthorizationServer.controller;
+
+import com.example.AuthorizationServer.service.TokenRevocationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Controller for REST API requests for revoking issued tokens. Only the superadmin role has access to this resource.
+ * General access is upheld through http security configuration in ResourceServerConfig.
+ */
+@RestController
+@RequestMapping("/revocations")
+public class RevocationController {
+
+    private static final Logger logger = LoggerFactory.getLogger(RevocationController.class);
+
+    private final TokenRevocationService tokenRevocationService;
+
+    @Autowired
+    public RevocationController(TokenRevocationService tokenRevocationService) {
+        this.tokenRevocationService = tokenRevocationService;
+    }
+
+    /**
+     * Revoke a single access or refresh token.
+     *
+     * @param token the encoded token.
+     * @return the response entity.
+     */
+    @PostMapping("/tokens")
+    public ResponseEntity<?> revokeToken(@RequestParam("token") String token) {
+        try {
+            tokenRevocationService.revokeToken(token);
+        } catch (InvalidTokenException e) {
+            return new ResponseEntity<>("Unexpected error. Invalid token.", HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>("Successfully revoked token.", HttpStatus.OK);
+    }
+
+    /**
+     * Revoke every token issued to a user so far.
+     *
+     * @param id the id of the user.
+     * @return the response entity.
+     */
+    @PostMapping("/users/{id}")
+    public ResponseEntity<?> revokeUserTokens(@PathVariable Long id) {
+        try {
+            tokenRevocationService.revokeUserTokens(id);
+        } catch (NoSuchElementException e) {
+            logger.error("User with id {} not found.", id);
+            return new ResponseEntity<>("Unexpected error. User not found.", HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>("Successfully revoked tokens of user with id " + id + ".", HttpStatus.OK);
+    }
+
+    /**
+     * Revoke every token issued to a client so far.
+     *
+     * @param clientId the id of the client.
+     * @return the response entity.
+     */
+    @PostMapping("/clients/{clientId}")
+    public ResponseEntity<?> revokeClientTokens(@PathVariable String clientId) {
+        try {
+            tokenRevocationService.revokeClientTokens(clientId);
+        } catch (NoSuchElementException e) {
+            logger.error("Client with id {} not found.", clientId);
+            return new ResponseEntity<>("Unexpected error. Client not found.", HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>("Successfully revoked tokens of client " + clientId + ".", HttpStatus.OK);
+    }
+}
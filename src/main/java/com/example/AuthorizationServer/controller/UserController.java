@@ -1,10 +1,15 @@
 package com.example.AuthorizationServer.controller;
 
+import com.example.AuthorizationServer.bo.dto.CursorPageDTO;
+import com.example.AuthorizationServer.bo.dto.ImportJobDTO;
+import com.example.AuthorizationServer.bo.dto.ImportReportDTO;
 import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
 import com.example.AuthorizationServer.bo.dto.UserDTO;
 import com.example.AuthorizationServer.bo.dto.UserExtendedDTO;
 import com.example.AuthorizationServer.security.CustomUserDetails;
+import com.example.AuthorizationServer.service.ImportJobService;
 import com.example.AuthorizationServer.service.OrganizationService;
+import com.example.AuthorizationServer.service.UserImportService;
 import com.example.AuthorizationServer.service.UserService;
 import com.example.AuthorizationServer.utility.UserDetailExtractor;
 import org.slf4j.Logger;
@@ -18,7 +23,9 @@ import org.springframework.web.multipart.MultipartFile;
 
 import javax.persistence.EntityNotFoundException;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * @author Jonas Fredén-Lundvall (jonlundv@kth.se), Gustav Kavtaradze (guek@kth.se), Erik Wikzén (wikzen@kth.se)
@@ -41,21 +48,35 @@ public class UserController {
 
     private final OrganizationService orgService;
 
+    private final UserImportService userImportService;
+
+    private final ImportJobService importJobService;
+
     @Autowired
-    public UserController(UserService userService, OrganizationService orgService) {
+    public UserController(UserService userService, OrganizationService orgService, UserImportService userImportService,
+                          ImportJobService importJobService) {
         this.userService = userService;
         this.orgService = orgService;
+        this.userImportService = userImportService;
+        this.importJobService = importJobService;
     }
 
     /**
-     * Retrieve all users with role user.
+     * Retrieve all users with role user. Results are paginated by limit and offset unless a cursor is given, in which
+     * case keyset pagination is used and the response carries the cursor of the next page. An empty cursor retrieves
+     * the first page.
      *
      * @param limit the upper limit of how many users to retrieve.
      * @param offset the offset for where in the ordered listing to start retrieving users.
+     * @param cursor the cursor returned with the previous page.
+     * @param withTotal whether to include the exact total number of users in a cursor paginated response.
      * @return the response entity.
      */
     @GetMapping("/")
-    public ResponseEntity<?> getAllUsers(@RequestParam(required = false) Integer limit, @RequestParam(required = false) Integer offset) {
+    public ResponseEntity<?> getAllUsers(@RequestParam(required = false) Integer limit,
+                                         @RequestParam(required = false) Integer offset,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(required = false, defaultValue = "false") boolean withTotal) {
         CustomUserDetails user = UserDetailExtractor.extract(SecurityContextHolder.getContext());
 
         OrganizationDTO adminOrganization;
@@ -65,8 +86,6 @@ public class UserController {
             return new ResponseEntity<>("Unexpected error. Admin organization membership is invalid.", HttpStatus.BAD_REQUEST);
         }
 
-        List<UserDTO> users;
-
         int getLimit = 20;
         int getOffset = 0;
 
@@ -76,6 +95,21 @@ public class UserController {
         if (offset != null)
             getOffset = offset;
 
+        if (cursor != null) {
+            CursorPageDTO<UserDTO> page;
+            try {
+                page = userService.getUsersPageByRootOrganization(adminOrganization.getId(), cursor, getLimit, withTotal);
+            } catch (IllegalArgumentException e) {
+                return new ResponseEntity<>("Unexpected error. Cursor or limit is not valid.", HttpStatus.BAD_REQUEST);
+            } catch (Exception e) {
+                logger.error(e.getMessage());
+                return new ResponseEntity<>("Unexpected error. Organization not found.", HttpStatus.BAD_REQUEST);
+            }
+            return new ResponseEntity<>(page, HttpStatus.OK);
+        }
+
+        List<UserDTO> users;
+
         // Admin is only authorized to fetch users with membership in sub organizations of its own root organization
         try {
             users = userService.getAllUsersByRootOrganization(adminOrganization.getId(), getLimit, getOffset);
@@ -245,7 +279,8 @@ public class UserController {
 
 
     /**
-     * Create multiple users by csv file.
+     * Create multiple users by csv file. The file is streamed and imported in chunks and rows that cannot be imported
+     * are listed in the returned import report.
      *
      * @param file the csv file.
      * @return the response entity.
@@ -264,77 +299,101 @@ public class UserController {
         if(file.isEmpty())
             return new ResponseEntity<>("Unexpected error. File is empty.", HttpStatus.NO_CONTENT);
 
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(file.getInputStream()))) {
-
-            String line;
-            String split = ",";
-            List<UserExtendedDTO> userDTOS = new ArrayList<>();
-
-            line = br.readLine();
-            String[] headersInFile = line.split(split);
-            String[] expectedHeaders = {"firstname", "lastname", "username", "password", "enabled", "organizations"};
-
-            if(headersInFile.length != expectedHeaders.length)
-                return new ResponseEntity<>("Unexpected error during parsing. CSV file has wrong format.", HttpStatus.BAD_REQUEST);
-
-            for (int i = 0; i < expectedHeaders.length; i++) {
-                if(!headersInFile[i].equals(expectedHeaders[i]))
-                    return new ResponseEntity<>("Unexpected error during parsing. CSV file has wrong format.", HttpStatus.BAD_REQUEST);
-            }
-
-            HashMap<String, OrganizationDTO> fetchedOrganizations = new HashMap<>();
-
-            while ((line = br.readLine()) != null) {
-                String[] userArray = line.split(split);
-
-                int i = 0;
+        ImportReportDTO report;
 
-                UserExtendedDTO userDTO = new UserExtendedDTO();
-                userDTO.setFirstname(userArray[i++]);
-                userDTO.setLastname(userArray[i++]);
-                userDTO.setUsername(userArray[i++]);
-                userDTO.setPassword(userArray[i++]);
-                userDTO.setRole("USER");
-                userDTO.setEnabled(new Boolean(userArray[i++]));
+        try (Reader reader = new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8)) {
+            report = userImportService.importUsersFromCsv(reader, adminOrganization.getId());
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>("Unexpected error during parsing. CSV file has wrong format.", HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            return new ResponseEntity<>("Unexpected error. Could not read file.", HttpStatus.BAD_REQUEST);
+        }
 
-                // All the following columns are expected to be names of existing organizations.
-                Set<OrganizationDTO> organizations = new HashSet<>();
+        return new ResponseEntity<>(report, HttpStatus.OK);
+    }
 
-                while (i < userArray.length) {
+    /**
+     * Submit an asynchronous job creating multiple users by JSON array. The job is committed in chunks and its
+     * progress can be polled through the job status endpoint.
+     *
+     * @param userDTOS the JSON array.
+     * @return the response entity.
+     */
+    @PostMapping("/upload/json/jobs/")
+    public ResponseEntity<?> submitUsersFromJSONArrayJob(@RequestBody List<UserExtendedDTO> userDTOS) {
+        CustomUserDetails user = UserDetailExtractor.extract(SecurityContextHolder.getContext());
 
-                    if(fetchedOrganizations.containsKey(userArray[i])) {
-                        organizations.add(fetchedOrganizations.get(userArray[i]));
-                    } else {
-                        OrganizationDTO organizationDTO = orgService.getOrganizationByName(userArray[i]);
+        OrganizationDTO adminOrganization;
+        try {
+            adminOrganization = extractAdminRootOrganization(user.getOrganizations());
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>("Unexpected error. Admin organization membership is invalid.", HttpStatus.BAD_REQUEST);
+        }
 
-                        if(organizationDTO == null)
-                            return new ResponseEntity<>("Unexpected error during parsing. CSV file has wrong format.", HttpStatus.BAD_REQUEST);
+        // Role and organization membership of every user is validated row by row by the job
+        ImportJobDTO job;
+        try {
+            job = importJobService.submitImport(userDTOS, adminOrganization.getId(), user.getUsername());
+        } catch (RejectedExecutionException e) {
+            return new ResponseEntity<>("Unexpected error. Too many import jobs are queued.", HttpStatus.SERVICE_UNAVAILABLE);
+        }
 
-                        // Admin is only allowed to add users to organizations within its own organization tree
-                        if(!orgService.isOrganizationChildOfRootParent(organizationDTO.getId(), adminOrganization.getId()))
-                            return new ResponseEntity<>("Unexpected error. Not authorized to create user in organization.", HttpStatus.UNAUTHORIZED);
+        return new ResponseEntity<>(job, HttpStatus.ACCEPTED);
+    }
 
+    /**
+     * Submit an asynchronous job creating multiple users by csv file. The job is committed in chunks and its progress
+     * can be polled through the job status endpoint.
+     *
+     * @param file the csv file.
+     * @return the response entity.
+     */
+    @PostMapping("/upload/file/jobs/")
+    public ResponseEntity<?> submitUsersFromCSVFileJob(@RequestParam("file") MultipartFile file) {
+        CustomUserDetails user = UserDetailExtractor.extract(SecurityContextHolder.getContext());
 
-                        fetchedOrganizations.put(userArray[i], organizationDTO);
-                        organizations.add(organizationDTO);
-                    }
+        OrganizationDTO adminOrganization;
+        try {
+            adminOrganization = extractAdminRootOrganization(user.getOrganizations());
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>("Unexpected error. Admin organization membership is invalid.", HttpStatus.BAD_REQUEST);
+        }
 
-                    i++;
-                }
+        if(file.isEmpty())
+            return new ResponseEntity<>("Unexpected error. File is empty.", HttpStatus.NO_CONTENT);
 
-                userDTO.setOrganizations(organizations);
+        ImportJobDTO job;
+        try {
+            job = importJobService.submitCsvImport(file, adminOrganization.getId(), user.getUsername());
+        } catch (RejectedExecutionException e) {
+            return new ResponseEntity<>("Unexpected error. Too many import jobs are queued.", HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+            return new ResponseEntity<>("Unexpected error. Could not read file.", HttpStatus.BAD_REQUEST);
+        }
 
-                userDTOS.add(userDTO);
-            }
+        return new ResponseEntity<>(job, HttpStatus.ACCEPTED);
+    }
 
-            userService.addUsers(userDTOS);
+    /**
+     * Retrieve the status of an import job submitted by the current admin.
+     *
+     * @param jobId the id of the import job.
+     * @return the response entity.
+     */
+    @GetMapping("/upload/jobs/{jobId}")
+    public ResponseEntity<?> getImportJob(@PathVariable String jobId) {
+        CustomUserDetails user = UserDetailExtractor.extract(SecurityContextHolder.getContext());
 
-        } catch (Exception e) {
-            logger.error(e.getMessage());
-            return new ResponseEntity<>("Unexpected error. Could not read file.", HttpStatus.BAD_REQUEST);
+        ImportJobDTO job;
+        try {
+            job = importJobService.getJob(jobId, user.getUsername());
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>("Unexpected error. Import job not found.", HttpStatus.NOT_FOUND);
         }
 
-        return new ResponseEntity<>(HttpStatus.OK);
+        return new ResponseEntity<>(job, HttpStatus.OK);
     }
 
     /**
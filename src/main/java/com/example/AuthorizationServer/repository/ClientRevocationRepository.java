@@ -0,0 +1,22 @@
+package com.example.AuthorizationServer.repository;
+
+import com.example.AuthorizationServer.bo.entity.ClientRevocation;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.transaction.Transactional;
+
+/**
+ * Repository for persisting client revocations.
+ */
+@Repository
+@Transactional
+public interface ClientRevocationRepository extends CrudRepository<ClientRevocation, String> {
+
+    @Modifying
+    @Query("delete from ClientRevocation r where r.revokedBefore <= :cutoff")
+    int deleteRevokedBefore(@Param("cutoff") long cutoff);
+}
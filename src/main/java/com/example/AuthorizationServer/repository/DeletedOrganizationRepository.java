@@ -0,0 +1,29 @@
+package com.example.AuthorizationServer.repository;
+
+import com.example.AuthorizationServer.bo.entity.DeletedOrganization;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.transaction.Transactional;
+import java.util.List;
+
+/**
+ * Repository for persisting tombstones of deleted organizations.
+ */
+@Repository
+@Transactional
+public interface DeletedOrganizationRepository extends CrudRepository<DeletedOrganization, Long> {
+
+    /**
+     * Finds the ids of the organizations deleted at or after the given time.
+     */
+    @Query("select d.organizationId from DeletedOrganization d where d.deletedAt >= :since")
+    List<Long> findIdsDeletedSince(@Param("since") long since);
+
+    @Modifying
+    @Query("delete from DeletedOrganization d where d.deletedAt < :cutoff")
+    int deleteDeletedBefore(@Param("cutoff") long cutoff);
+}
@@ -0,0 +1,29 @@
+package com.example.AuthorizationServer.repository;
+
+import com.example.AuthorizationServer.bo.entity.DeletedUser;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.transaction.Transactional;
+import java.util.List;
+
+/**
+ * Repository for persisting tombstones of deleted users.
+ */
+@Repository
+@Transactional
+public interface DeletedUserRepository extends CrudRepository<DeletedUser, Long> {
+
+    /**
+     * Finds the id and final security stamp of every user deleted with a stamp larger than the given one.
+     */
+    @Query("select d.userId, d.securityStamp from DeletedUser d where d.securityStamp > :since")
+    List<Object[]> findSecurityStampsChangedSince(@Param("since") long since);
+
+    @Modifying
+    @Query("delete from DeletedUser d where d.securityStamp < :cutoff")
+    int deleteStampedBefore(@Param("cutoff") long cutoff);
+}
@@ -0,0 +1,22 @@
+package com.example.AuthorizationServer.repository;
+
+import com.example.AuthorizationServer.bo.entity.ImportJob;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.transaction.Transactional;
+
+/**
+ * Repository for persisting the status of user import jobs.
+ */
+@Repository
+@Transactional
+public interface ImportJobRepository extends CrudRepository<ImportJob, String> {
+
+    @Modifying
+    @Query("delete from ImportJob j where j.finished < :threshold")
+    int deleteFinishedBefore(@Param("threshold") long threshold);
+}
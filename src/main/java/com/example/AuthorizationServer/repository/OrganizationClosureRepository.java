@@ -0,0 +1,110 @@
+package com.example.AuthorizationServer.repository;
+
+import com.example.AuthorizationServer.bo.entity.Organization;
+import com.example.AuthorizationServer.bo.entity.OrganizationClosure;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.transaction.Transactional;
+import java.util.List;
+
+/**
+ * Repository for persisting the organization closure table. Reads are lookups on the primary key (subtrees) or on the
+ * descendant index (ancestors).
+ */
+@Repository
+@Transactional
+public interface OrganizationClosureRepository extends CrudRepository<OrganizationClosure, OrganizationClosure.Key> {
+
+    /**
+     * Finds an organization and all of its descendants, ordered by path.
+     */
+    @Query("select o from OrganizationClosure c, Organization o " +
+            "where c.ancestorId = :id and o.id = c.descendantId order by o.path asc")
+    List<Organization> findSubTree(@Param("id") Long id);
+
+    /**
+     * Finds an organization and its descendants at most the given number of levels below it, ordered by path.
+     */
+    @Query("select o from OrganizationClosure c, Organization o " +
+            "where c.ancestorId = :id and c.depth <= :depth and o.id = c.descendantId order by o.path asc")
+    List<Organization> findSubTreeToDepth(@Param("id") Long id, @Param("depth") int depth);
+
+    /**
+     * Finds the ancestors of an organization, ordered from its root organization to its parent.
+     */
+    @Query("select o from OrganizationClosure c, Organization o " +
+            "where c.descendantId = :id and c.depth > 0 and o.id = c.ancestorId order by c.depth desc")
+    List<Organization> findAncestors(@Param("id") Long id);
+
+    @Modifying
+    @Query(value = "insert ignore into organization_closure " +
+            "(closure_ancestor_id, closure_descendant_id, closure_depth) values (:id, :id, 0)", nativeQuery = true)
+    int insertSelf(@Param("id") Long id);
+
+    /**
+     * Removes the links between the organizations of a subtree and the ancestors of its root, keeping the links within
+     * the subtree.
+     */
+    @Modifying
+    @Query(value = "delete c from organization_closure c " +
+            "join organization_closure s on s.closure_descendant_id = c.closure_descendant_id " +
+            "left join organization_closure i on i.closure_ancestor_id = :id " +
+            "and i.closure_descendant_id = c.closure_ancestor_id " +
+            "where s.closure_ancestor_id = :id and i.closure_ancestor_id is null", nativeQuery = true)
+    int detachSubTree(@Param("id") Long id);
+
+    /**
+     * Links every organization of a subtree to the new parent of its root and to all ancestors of that parent.
+     */
+    @Modifying
+    @Query(value = "insert into organization_closure (closure_ancestor_id, closure_descendant_id, closure_depth) " +
+            "select p.closure_ancestor_id, s.closure_descendant_id, p.closure_depth + s.closure_depth + 1 " +
+            "from organization_closure p join organization_closure s " +
+            "where p.closure_descendant_id = :parentId and s.closure_ancestor_id = :id", nativeQuery = true)
+    int attachSubTree(@Param("id") Long id, @Param("parentId") Long parentId);
+
+    @Modifying
+    @Query("delete from OrganizationClosure c where c.ancestorId = :id or c.descendantId = :id")
+    int deleteOrganization(@Param("id") Long id);
+
+    @Query("select count(c) from OrganizationClosure c where c.depth = 0")
+    long countOrganizations();
+
+    @Modifying
+    @Query("delete from OrganizationClosure c")
+    int deleteAllLinks();
+
+    /**
+     * Fills the closure table from the paths of all organizations, by splitting each path into its ancestors from the
+     * end. Organizations without a path are their own roots. Needs MySQL 8 for the recursive common table expression.
+     */
+    @Modifying
+    @Query(value = "insert into organization_closure (closure_ancestor_id, closure_descendant_id, closure_depth) " +
+            "with recursive ancestry (descendant_id, rest, depth) as (" +
+            "select org_id, coalesce(nullif(org_path, ''), cast(org_id as char)), 0 from organizations " +
+            "union all " +
+            "select descendant_id, substring(rest, 1, length(rest) - length(substring_index(rest, '.', -1)) - 1), " +
+            "depth + 1 from ancestry where rest like '%.%') " +
+            "select cast(substring_index(rest, '.', -1) as unsigned), descendant_id, depth from ancestry",
+            nativeQuery = true)
+    int insertAllFromPaths();
+
+    /**
+     * Fills the closure table from the paths of the organizations of a subtree that has no links yet, like
+     * insertAllFromPaths. The pattern is the path of the root followed by ".%".
+     */
+    @Modifying
+    @Query(value = "insert into organization_closure (closure_ancestor_id, closure_descendant_id, closure_depth) " +
+            "with recursive ancestry (descendant_id, rest, depth) as (" +
+            "select org_id, org_path, 0 from organizations where org_path = :path or org_path like :pattern " +
+            "union all " +
+            "select descendant_id, substring(rest, 1, length(rest) - length(substring_index(rest, '.', -1)) - 1), " +
+            "depth + 1 from ancestry where rest like '%.%') " +
+            "select cast(substring_index(rest, '.', -1) as unsigned), descendant_id, depth from ancestry",
+            nativeQuery = true)
+    int insertSubTreeFromPaths(@Param("path") String path, @Param("pattern") String pattern);
+}
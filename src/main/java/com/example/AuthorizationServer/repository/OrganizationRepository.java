@@ -1,10 +1,15 @@
 package com.example.AuthorizationServer.repository;
 
 import com.example.AuthorizationServer.bo.entity.Organization;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import javax.transaction.Transactional;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -23,13 +28,68 @@ public interface OrganizationRepository extends CrudRepository<Organization, Str
 
     List<Organization> findAllByOrderByPathAsc();
 
-    List<Organization> findByPathStartsWith(String id);
+    /**
+     * Finds the organizations ordered after the given path and id, ordered by path and id. The leading path bound lets
+     * MySQL range scan the path index instead of evaluating the disjunction on every row.
+     */
+    @Query("select o from Organization o where o.path >= :path and (o.path > :path or o.id > :id) " +
+            "order by o.path asc, o.id asc")
+    List<Organization> findAllAfter(@Param("path") String path, @Param("id") Long id, Pageable pageable);
+
+    List<Organization> findByIdIn(Collection<Long> ids);
+
+    List<Organization> findByNameIn(Collection<String> names);
+
+    /**
+     * Finds the organization with the given path and all organizations below it, ordered by path. The pattern is the
+     * path followed by ".%", so that the prefix match can use the path index.
+     */
+    @Query("select o from Organization o where o.path = :path or o.path like :pattern order by o.path asc")
+    List<Organization> findSubTreeByPath(@Param("path") String path, @Param("pattern") String pattern);
+
+    /**
+     * Finds the organization with the given path and the organizations below it whose paths have at most the given
+     * number of separators, ordered by path. See findSubTreeByPath for the pattern.
+     */
+    @Query("select o from Organization o where (o.path = :path or o.path like :pattern) " +
+            "and length(o.path) - length(function('replace', o.path, '.', '')) <= :maxSeparators " +
+            "order by o.path asc")
+    List<Organization> findSubTreeByPathToDepth(@Param("path") String path, @Param("pattern") String pattern,
+                                                @Param("maxSeparators") int maxSeparators);
+
+    /**
+     * Finds the organizations whose paths have at most the given number of separators, i.e. the root organizations
+     * and the given number of levels below them, ordered by path.
+     */
+    @Query("select o from Organization o " +
+            "where length(o.path) - length(function('replace', o.path, '.', '')) <= :maxSeparators " +
+            "order by o.path asc")
+    List<Organization> findAllToDepthOrderByPathAsc(@Param("maxSeparators") int maxSeparators);
+
+    /**
+     * Replaces the path of an organization, and the same prefix of the paths of all organizations below it, with a new
+     * path. The pattern is the old path followed by ".%" and the suffix start is the length of the old path plus one.
+     * Pending changes are flushed first and the persistence context is cleared afterwards. The change time of every
+     * updated organization is set to the given time, since bulk updates bypass the entity callbacks.
+     *
+     * @return the number of updated organizations.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Organization o set o.path = concat(:newPath, substring(o.path, :suffixStart)), o.changedAt = :now " +
+            "where o.path = :oldPath or o.path like :pattern")
+    int replacePathPrefix(@Param("oldPath") String oldPath, @Param("pattern") String pattern,
+                          @Param("newPath") String newPath, @Param("suffixStart") int suffixStart,
+                          @Param("now") long now);
+
+    /**
+     * Finds the organizations written at or after the given time.
+     */
+    @Query("select o from Organization o where o.changedAt >= :since")
+    List<Organization> findChangedSince(@Param("since") long since);
 
     List<Organization> findByPathContains(String id);
 
     List<Organization> findByPathNotContaining(String id);
 
-    List<Organization> findByPathContainsOrderByPathAsc(String id);
-
     void deleteById(Long id);
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package com.example.AuthorizationServer.repository;
+
+import com.example.AuthorizationServer.bo.entity.RevokedToken;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.transaction.Transactional;
+import java.util.List;
+
+/**
+ * Repository for persisting revoked tokens.
+ */
+@Repository
+@Transactional
+public interface RevokedTokenRepository extends CrudRepository<RevokedToken, String> {
+
+    /**
+     * Finds the jtis of the revoked tokens that have not yet expired.
+     */
+    @Query("select t.jti from RevokedToken t where t.expiresAt > :now")
+    List<String> findUnexpiredJtis(@Param("now") long now);
+
+    /**
+     * Finds the jtis of the tokens revoked after the given time.
+     */
+    @Query("select t.jti from RevokedToken t where t.revokedAt > :since")
+    List<String> findJtisRevokedSince(@Param("since") long since);
+
+    @Modifying
+    @Query("delete from RevokedToken t where t.expiresAt <= :now")
+    int deleteExpired(@Param("now") long now);
+}
@@ -2,10 +2,15 @@ package com.example.AuthorizationServer.repository;
 
 import com.example.AuthorizationServer.bo.entity.Organization;
 import com.example.AuthorizationServer.bo.entity.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import javax.transaction.Transactional;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,5 +35,54 @@ public interface UserRepository extends CrudRepository<User, String> {
 
     List<User> findAllByOrganizationsContainsAndRoleAndEnabled(Organization organization, String role, boolean enabled);
 
+    /**
+     * Finds the unique users that are members of an organization or any of its sub organizations, i.e. organizations
+     * whose path equals the given path or starts with it followed by a dot. Results are ordered by username.
+     */
+    @Query("select distinct u from User u join u.organizations o " +
+            "where u.role = :role and u.enabled = :enabled and (o.path = :path or o.path like concat(:path, '.%')) " +
+            "order by u.username asc")
+    List<User> findAllInOrganizationTree(@Param("path") String path, @Param("role") String role,
+                                         @Param("enabled") boolean enabled, Pageable pageable);
+
+    /**
+     * Keyset variant of findAllInOrganizationTree which only returns users with a username after the given one.
+     */
+    @Query("select distinct u from User u join u.organizations o " +
+            "where u.role = :role and u.enabled = :enabled and (o.path = :path or o.path like concat(:path, '.%')) " +
+            "and u.username > :after order by u.username asc")
+    List<User> findAllInOrganizationTreeAfter(@Param("path") String path, @Param("role") String role,
+                                              @Param("enabled") boolean enabled, @Param("after") String after,
+                                              Pageable pageable);
+
+    @Query("select count(distinct u) from User u join u.organizations o " +
+            "where u.role = :role and u.enabled = :enabled and (o.path = :path or o.path like concat(:path, '.%'))")
+    long countAllInOrganizationTree(@Param("path") String path, @Param("role") String role,
+                                    @Param("enabled") boolean enabled);
+
+    @Query("select u.username from User u where u.username in :usernames")
+    List<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
+
+    /**
+     * Finds the id and security stamp of every user whose stamp is larger than the given one.
+     */
+    @Query("select u.id, u.securityStamp from User u where u.securityStamp > :since")
+    List<Object[]> findSecurityStampsChangedSince(@Param("since") long since);
+
+    /**
+     * Finds the ids of the users that are members of an organization or any of its sub organizations.
+     */
+    @Query("select distinct u.id from User u join u.organizations o " +
+            "where o.path = :path or o.path like concat(:path, '.%')")
+    List<Long> findIdsInOrganizationTree(@Param("path") String path);
+
+    /**
+     * Moves the security stamps of the given users forward to the given time, or by one if a stamp is already past it.
+     */
+    @Modifying
+    @Query("update User u set u.securityStamp = case when u.securityStamp < :now then :now else u.securityStamp + 1 end " +
+            "where u.id in :ids")
+    int bumpSecurityStamps(@Param("ids") Collection<Long> ids, @Param("now") long now);
+
     void deleteByRoleAndId(String role, Long id);
 }
\ No newline at end of file
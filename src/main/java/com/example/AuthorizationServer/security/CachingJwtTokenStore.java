@@ -0,0 +1,330 @@
+package com.example.AuthorizationServer.security;
+
+import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
+import com.example.AuthorizationServer.utility.ExpiringLruCache;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * JWT token store that caches verified and parsed access tokens by the SHA-256 digest of their value, so that repeated
+ * requests with the same bearer token skip both signature verification and claim parsing. Entries expire at the
+ * expiry of the token. Used both for resource server requests and for /oauth/check_token.
+ *
+ * Every read returns fresh token, authentication and user details objects since callers such as
+ * OAuth2AuthenticationManager modify what they are given.
+ *
+ * Access tokens are checked against the SecurityStampRegistry and the TokenRevocationList on every read, cached or
+ * not, so that tokens of users who have since been changed or disabled, and revoked tokens, are rejected.
+ *
+ * Refresh tokens are not cached since each is only used once per access token lifetime. A refresh token is verified
+ * once when read, and the authentication read for it carries the user embedded in the token as details of the user
+ * authentication for SnapshotRefreshAuthenticationProvider.
+ *
+ * Unlike JwtTokenStore, tokens issued by the client credentials grant can be remembered for a while, in which case
+ * DefaultTokenServices hands out the remembered token again instead of signing a new one when the same client asks for
+ * the same scopes.
+ */
+public class CachingJwtTokenStore extends JwtTokenStore {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final String ISSUED_AT = "iat";
+
+    private final CustomTokenConverter tokenConverter;
+
+    private final ExpiringLruCache<String, DecodedToken> cache;
+
+    private SecurityStampRegistry securityStampRegistry;
+
+    private TokenRevocationList tokenRevocationList;
+
+    private final AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+
+    // Authentication key -> value of the remembered client credentials token, null unless enabled
+    private ExpiringLruCache<String, String> serviceTokens;
+
+    /**
+     * @param tokenConverter the converter used for verifying and parsing tokens.
+     * @param maxSize the maximum number of cached tokens.
+     * @param maxTtlMillis the longest time a token is cached, regardless of its expiry.
+     */
+    public CachingJwtTokenStore(CustomTokenConverter tokenConverter, int maxSize, long maxTtlMillis) {
+        super(tokenConverter);
+        this.tokenConverter = tokenConverter;
+        this.cache = new ExpiringLruCache<>(maxSize, maxTtlMillis);
+    }
+
+    /**
+     * Sets the registry that access tokens are checked against on every read. Tokens whose security stamp is older
+     * than that of their user are rejected.
+     *
+     * @param securityStampRegistry the security stamp registry.
+     */
+    public void setSecurityStampRegistry(SecurityStampRegistry securityStampRegistry) {
+        this.securityStampRegistry = securityStampRegistry;
+    }
+
+    /**
+     * Sets the denylist that access and refresh tokens are checked against on every read.
+     *
+     * @param tokenRevocationList the token revocation list.
+     */
+    public void setTokenRevocationList(TokenRevocationList tokenRevocationList) {
+        this.tokenRevocationList = tokenRevocationList;
+    }
+
+    /**
+     * Remembers tokens issued by the client credentials grant so that they are reused by later requests of the same
+     * client for the same scopes. A token is reused for at most the given time after it was issued, never after it has
+     * expired, and not at all once it has been revoked.
+     *
+     * @param maxSize the maximum number of remembered tokens.
+     * @param reuseMillis the longest time a token is reused after it was issued, or 0 to not reuse tokens.
+     */
+    public void setServiceTokenReuse(int maxSize, long reuseMillis) {
+        this.serviceTokens = reuseMillis > 0 ? new ExpiringLruCache<>(maxSize, reuseMillis) : null;
+    }
+
+    /**
+     * Verifies a token of any kind and reads its claims, without checking whether it has expired or been revoked.
+     *
+     * @param tokenValue the token.
+     * @return the claims of the token.
+     */
+    public Map<String, Object> readClaims(String tokenValue) {
+        return tokenConverter.decode(tokenValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        return new DefaultOAuth2AccessToken(decode(tokenValue).accessToken);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return readAuthentication(token.getValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        OAuth2Authentication cached = decode(token).authentication;
+
+        OAuth2Authentication authentication = new OAuth2Authentication(cached.getOAuth2Request(),
+                cached.getUserAuthentication());
+        if (cached.getDetails() instanceof CustomUserDetails)
+            authentication.setDetails(copy((CustomUserDetails) cached.getDetails()));
+        else
+            authentication.setDetails(cached.getDetails());
+        return authentication;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Override returns the remembered token of a client credentials authentication, if any.
+     */
+    @Override
+    public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+        if (serviceTokens == null || !authentication.isClientOnly())
+            return null;
+
+        String key = authenticationKeyGenerator.extractKey(authentication);
+        String tokenValue = serviceTokens.get(key);
+        if (tokenValue == null)
+            return null;
+        DefaultOAuth2AccessToken token;
+        try {
+            token = new DefaultOAuth2AccessToken(decode(tokenValue).accessToken);
+        } catch (InvalidTokenException e) {
+            serviceTokens.invalidate(key);
+            return null;
+        }
+        // Claims are only carried in the token value, as for newly issued tokens
+        token.setAdditionalInformation(Collections.emptyMap());
+        return token;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Override remembers tokens of client credentials authentications, see setServiceTokenReuse.
+     */
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        if (serviceTokens == null || !authentication.isClientOnly() || token.getExpiration() == null)
+            return;
+
+        String key = authenticationKeyGenerator.extractKey(authentication);
+        // DefaultTokenServices stores reused tokens again, which must not extend their reuse
+        if (!token.getValue().equals(serviceTokens.get(key)))
+            serviceTokens.put(key, token.getValue(), token.getExpiration().getTime());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        Map<String, Object> claims = tokenConverter.decode(tokenValue);
+        OAuth2AccessToken encodedRefreshToken = tokenConverter.extractAccessToken(tokenValue, claims);
+        if (!tokenConverter.isRefreshToken(encodedRefreshToken))
+            throw new InvalidTokenException("Encoded token is not a refresh token");
+        if (isRevoked(claims.get(AccessTokenConverter.JTI), (String) claims.get(AccessTokenConverter.CLIENT_ID),
+                claims.get(ISSUED_AT)))
+            throw new InvalidTokenException("Refresh token has been revoked");
+        if (encodedRefreshToken.getExpiration() == null)
+            return new DefaultOAuth2RefreshToken(tokenValue);
+        return new DecodedRefreshToken(tokenValue, encodedRefreshToken.getExpiration(), claims);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+        Map<String, Object> claims;
+        if (token instanceof DecodedRefreshToken)
+            claims = ((DecodedRefreshToken) token).claims;
+        else
+            claims = tokenConverter.decode(token.getValue());
+
+        OAuth2Authentication authentication = tokenConverter.extractAuthentication(claims);
+        if (authentication.getUserAuthentication() instanceof AbstractAuthenticationToken)
+            ((AbstractAuthenticationToken) authentication.getUserAuthentication())
+                    .setDetails(authentication.getDetails());
+        return authentication;
+    }
+
+    /**
+     * Removes all cached tokens.
+     */
+    public void clearCache() {
+        cache.clear();
+        if (serviceTokens != null)
+            serviceTokens.clear();
+    }
+
+    private DecodedToken decode(String tokenValue) {
+        String key = digest(tokenValue);
+        DecodedToken decoded = cache.get(key);
+        if (decoded != null) {
+            checkSecurityStamp(key, decoded);
+            checkRevocation(decoded);
+            return decoded;
+        }
+
+        // Verifies the signature once for both the access token and the authentication
+        Map<String, Object> claims = tokenConverter.decode(tokenValue);
+        OAuth2AccessToken accessToken = tokenConverter.extractAccessToken(tokenValue, claims);
+        if (tokenConverter.isRefreshToken(accessToken))
+            throw new InvalidTokenException("Encoded token is a refresh token");
+        OAuth2Authentication authentication = tokenConverter.extractAuthentication(claims);
+
+        decoded = new DecodedToken(accessToken, authentication);
+        if (accessToken.getExpiration() != null)
+            cache.put(key, decoded, accessToken.getExpiration().getTime());
+        checkSecurityStamp(key, decoded);
+        checkRevocation(decoded);
+        return decoded;
+    }
+
+    private void checkSecurityStamp(String key, DecodedToken decoded) {
+        if (securityStampRegistry == null || !(decoded.authentication.getDetails() instanceof CustomUserDetails))
+            return;
+        CustomUserDetails user = (CustomUserDetails) decoded.authentication.getDetails();
+        if (!securityStampRegistry.isCurrent(user.getId(), user.getSecurityStamp())) {
+            cache.invalidate(key);
+            throw new InvalidTokenException("Access token has been invalidated");
+        }
+    }
+
+    private void checkRevocation(DecodedToken decoded) {
+        Map<String, Object> info = decoded.accessToken.getAdditionalInformation();
+        if (isRevoked(info.get(AccessTokenConverter.JTI), decoded.authentication.getOAuth2Request().getClientId(),
+                info.get(ISSUED_AT)))
+            throw new InvalidTokenException("Access token has been revoked");
+    }
+
+    private boolean isRevoked(Object jti, String clientId, Object issuedAt) {
+        if (tokenRevocationList == null)
+            return false;
+        Long issuedAtSeconds = issuedAt instanceof Number ? ((Number) issuedAt).longValue() : null;
+        return tokenRevocationList.isRevoked((String) jti, clientId, issuedAtSeconds);
+    }
+
+    private static String digest(String tokenValue) {
+        byte[] hash = SHA_256.get().digest(tokenValue.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+
+    /**
+     * Copies user details. Memberships are expanded once per cached token and copied since dtos are mutable.
+     */
+    private static CustomUserDetails copy(CustomUserDetails details) {
+        CustomUserDetails copy = new CustomUserDetails(details.getUsername(), details.getPassword(),
+                details.getAuthorities(), details.getId(), () -> {
+                    Collection<OrganizationDTO> source = details.getOrganizations();
+                    List<OrganizationDTO> organizations = new ArrayList<>(source.size());
+                    for (OrganizationDTO o: source)
+                        organizations.add(new OrganizationDTO(o.getId(), o.getName(), o.getPath(), o.getEnabled()));
+                    return organizations;
+                });
+        copy.setSecurityStamp(details.getSecurityStamp());
+        return copy;
+    }
+
+    /**
+     * Refresh token that keeps the claims it was verified with, so that they need not be verified again when reading
+     * its authentication.
+     */
+    private static class DecodedRefreshToken extends DefaultExpiringOAuth2RefreshToken {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Map<String, Object> claims;
+
+        private DecodedRefreshToken(String value, Date expiration, Map<String, Object> claims) {
+            super(value, expiration);
+            this.claims = claims;
+        }
+    }
+
+    private static class DecodedToken {
+        private final OAuth2AccessToken accessToken;
+        private final OAuth2Authentication authentication;
+
+        private DecodedToken(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+            this.accessToken = accessToken;
+            this.authentication = authentication;
+        }
+    }
+}
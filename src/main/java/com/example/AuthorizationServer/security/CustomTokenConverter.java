@@ -1,37 +1,154 @@
 package com.example.AuthorizationServer.security;
 
 import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
+import com.example.AuthorizationServer.service.OrganizationHierarchyIndex;
+import com.example.AuthorizationServer.utility.ExpiringLruCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.jwt.Jwt;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
 import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.JsonParser;
+import org.springframework.security.oauth2.common.util.JsonParserFactory;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
 import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
 
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
 import java.util.*;
 
 /**
  * @author Jonas Fredén-Lundvall (jonlundv@kth.se)
  *
  * Custom helper which acts as a TokenEnhancer for when tokens are granted.
+ *
+ * When given a JwtKeyProvider, tokens are signed with RS256 and carry the id of the signing key in the kid header.
+ * Tokens are then verified with the key named by their kid, so that tokens signed with a previous key remain valid
+ * while keys are rotated.
+ *
+ * Organization memberships are embedded in the "orgs" claim in the format given by the OrganizationClaimMode. Compact
+ * formats are expanded into organization dtos from the OrganizationHierarchyIndex when the memberships are first
+ * read, so they reflect the current name and enabled flag of each organization rather than those at issue time. The
+ * index is consistent with writes on other nodes within one poll interval, the same rule the organization checks of
+ * OrganizationService rely on, and falls back to the database for organizations it does not hold yet. Memberships of
+ * organizations that no longer exist are left out.
+ *
+ * The serialized organization claim is memoized per user and reused for as long as the memberships of the user are
+ * unchanged, since it is usually the largest part of the token. It is the only claim that is precomputed, apart from
+ * the JOSE header encoded once by JwtTokenWriter. Every issue still builds the map of additional claims and goes through
+ * JwtAccessTokenConverter.enhance, which copies the token and assigns its jti.
+ *
+ * The "stamp" claim holds the security stamp of the user at issue time, which lets a refresh reuse the user embedded in
+ * the refresh token while the stamp is unchanged, see SnapshotRefreshAuthenticationProvider.
+ *
+ * The "refresh_at" claim suggests when, in epoch seconds, the client should refresh the access token. It lies a fixed
+ * fraction into the lifetime of the token, which JitteredTokenServices varies from token to token.
  */
 public class CustomTokenConverter extends JwtAccessTokenConverter {
 
+    private static final int ORGANIZATION_CLAIM_MEMO_SIZE = 10000;
+
+    private static final long ORGANIZATION_CLAIM_MEMO_TTL_MILLIS = 10 * 60 * 1000;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final JsonParser jsonParser = JsonParserFactory.create();
+
+    // User id -> serialized organization claim
+    private final ExpiringLruCache<Long, OrganizationClaim> organizationClaims =
+            new ExpiringLruCache<>(ORGANIZATION_CLAIM_MEMO_SIZE, ORGANIZATION_CLAIM_MEMO_TTL_MILLIS);
+
+    private OrganizationClaimMode organizationClaimMode = OrganizationClaimMode.FULL;
+
+    private double refreshAtFraction = 0.8;
+
+    private OrganizationHierarchyIndex hierarchyIndex;
+
+    private JwtTokenWriter tokenWriter;
+
+    // Key id -> verifier. Empty unless signing with a key provider.
+    private Map<String, SignatureVerifier> verifiers = Collections.emptyMap();
+
+    public void setOrganizationClaimMode(OrganizationClaimMode organizationClaimMode) {
+        this.organizationClaimMode = organizationClaimMode;
+    }
+
+    public void setHierarchyIndex(OrganizationHierarchyIndex hierarchyIndex) {
+        this.hierarchyIndex = hierarchyIndex;
+    }
+
+    public void setRefreshAtFraction(double refreshAtFraction) {
+        if (refreshAtFraction <= 0 || refreshAtFraction > 1)
+            throw new IllegalArgumentException("Refresh at fraction must be above 0 and at most 1, was " +
+                    refreshAtFraction);
+        this.refreshAtFraction = refreshAtFraction;
+    }
+
+    /**
+     * Calculates the suggested refresh time of a token.
+     *
+     * @param issuedAt the issue time in epoch seconds.
+     * @param expiresAt the expiry in epoch seconds.
+     * @param refreshAtFraction the fraction of the lifetime of the token after which it should be refreshed.
+     * @return the suggested refresh time in epoch seconds.
+     */
+    public static long refreshAt(long issuedAt, long expiresAt, double refreshAtFraction) {
+        return issuedAt + (long) ((expiresAt - issuedAt) * refreshAtFraction);
+    }
+
+    /**
+     * Signs tokens with the signing key of a key provider and verifies tokens with any of its verification keys.
+     *
+     * @param keyProvider the key provider.
+     */
+    public void setKeyProvider(JwtKeyProvider keyProvider) {
+        setKeyPair(keyProvider.getSigningKeyPair());
+
+        // Writer and verifiers are created once and shared, both are thread safe
+        this.tokenWriter = new JwtTokenWriter((RSAPrivateKey) keyProvider.getSigningKeyPair().getPrivate(),
+                keyProvider.getSigningKeyId());
+
+        Map<String, SignatureVerifier> keyVerifiers = new HashMap<>();
+        for (Map.Entry<String, RSAPublicKey> entry: keyProvider.getVerificationKeys().entrySet()) {
+            keyVerifiers.put(entry.getKey(), new RsaVerifier(entry.getValue()));
+        }
+        this.verifiers = keyVerifiers;
+        setVerifier(keyVerifiers.get(keyProvider.getSigningKeyId()));
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public OAuth2AccessToken enhance(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
 
-        CustomUserDetails user = (CustomUserDetails) authentication.getPrincipal();
-
-        Map<String, Object> additionalInfo = new HashMap<>();
-        additionalInfo.put("orgs", user.getOrganizations());
-        additionalInfo.put("id", user.getId());
+        Map<String, Object> additionalInfo = new HashMap<>(8);
+        // Tokens of the client credentials grant have no user
+        if (authentication.getPrincipal() instanceof CustomUserDetails) {
+            CustomUserDetails user = (CustomUserDetails) authentication.getPrincipal();
+            additionalInfo.put("orgs", organizationClaim(user.getId(), user.getOrganizations()));
+            additionalInfo.put("id", user.getId());
+            if (user.getSecurityStamp() != null)
+                additionalInfo.put("stamp", user.getSecurityStamp());
+        }
+        // Lets all tokens issued to a client before a point in time be revoked, see TokenRevocationList
+        long issuedAt = System.currentTimeMillis() / 1000;
+        additionalInfo.put("iat", issuedAt);
+        if (accessToken.getExpiration() != null)
+            additionalInfo.put("refresh_at", refreshAt(issuedAt, accessToken.getExpiration().getTime() / 1000,
+                    refreshAtFraction));
         ((DefaultOAuth2AccessToken) accessToken).setAdditionalInformation(additionalInfo);
 
         accessToken = super.enhance(accessToken, authentication);
-        ((DefaultOAuth2AccessToken) accessToken).setAdditionalInformation(new HashMap<>());
+        ((DefaultOAuth2AccessToken) accessToken).setAdditionalInformation(Collections.emptyMap());
         return accessToken;
     }
 
@@ -41,16 +158,8 @@ public class CustomTokenConverter extends JwtAccessTokenConverter {
     @Override
     public OAuth2Authentication extractAuthentication(Map<String, ?> map) {
         OAuth2Authentication authentication = super.extractAuthentication(map);
-
-        ArrayList<LinkedHashMap<String, String>> organizations = (ArrayList<LinkedHashMap<String, String>>) map.get("orgs");
-        List<OrganizationDTO> orgs = new ArrayList<>();
-        for (LinkedHashMap m: organizations) {
-            Long id = Long.valueOf((Integer) m.get("id"));
-            String name = (String) m.get("name");
-            String path = (String) m.get("path");
-            Boolean enabled = (Boolean) m.get("enabled");
-            orgs.add(new OrganizationDTO(id, name, path, enabled));
-        }
+        if (authentication.isClientOnly())
+            return authentication;
 
         String name = (String) map.get("user_name");
         Long id = Long.valueOf((Integer) map.get("id"));
@@ -60,9 +169,151 @@ public class CustomTokenConverter extends JwtAccessTokenConverter {
             auths.add(new SimpleGrantedAuthority(s));
         }
 
-        CustomUserDetails user = new CustomUserDetails(name, "", auths, id, orgs);
+        Object organizationClaim = map.get("orgs");
+        CustomUserDetails user = new CustomUserDetails(name, "", auths, id,
+                () -> fromOrganizationClaim(organizationClaim));
+        // Absent in tokens issued before security stamps were introduced
+        if (map.get("stamp") instanceof Number)
+            user.setSecurityStamp(((Number) map.get("stamp")).longValue());
         authentication.setDetails(user);
 
         return authentication;
     }
+
+    /**
+     * Fetches the serialized organization claim of a user, reusing the memoized claim if the memberships are unchanged.
+     */
+    private RawValue organizationClaim(Long userId, Collection<OrganizationDTO> organizations) {
+        OrganizationClaim memo = userId == null ? null : organizationClaims.get(userId);
+        if (memo != null && memo.matches(organizations))
+            return memo.json;
+
+        RawValue json;
+        try {
+            json = new RawValue(OBJECT_MAPPER.writeValueAsString(toOrganizationClaim(organizations)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot convert organization claim to JSON", e);
+        }
+        if (userId != null && organizations != null)
+            organizationClaims.put(userId, new OrganizationClaim(organizations, json));
+        return json;
+    }
+
+    private Object toOrganizationClaim(Collection<OrganizationDTO> organizations) {
+        if (organizationClaimMode == OrganizationClaimMode.FULL || organizations == null)
+            return organizations;
+
+        List<Object> claim = new ArrayList<>(organizations.size());
+        for (OrganizationDTO o: organizations) {
+            boolean hasPath = o.getPath() != null && !o.getPath().isEmpty();
+            claim.add(organizationClaimMode == OrganizationClaimMode.PATHS && hasPath ? o.getPath() : o.getId());
+        }
+        return claim;
+    }
+
+    /**
+     * Rebuilds organization dtos from an organization claim in any of the claim formats. The format is detected per
+     * element, so tokens issued before a change of claim mode can still be read. Organizations that no longer exist
+     * are left out.
+     */
+    private Collection<OrganizationDTO> fromOrganizationClaim(Object claim) {
+        List<OrganizationDTO> orgs = new ArrayList<>();
+        if (!(claim instanceof Collection))
+            return orgs;
+
+        for (Object element: (Collection<?>) claim) {
+            if (element instanceof Map) {
+                Map<?, ?> m = (Map<?, ?>) element;
+                Long id = ((Number) m.get("id")).longValue();
+                String name = (String) m.get("name");
+                String path = (String) m.get("path");
+                Boolean enabled = (Boolean) m.get("enabled");
+                orgs.add(new OrganizationDTO(id, name, path, enabled));
+            } else {
+                Long id;
+                if (element instanceof Number) {
+                    id = ((Number) element).longValue();
+                } else {
+                    String path = (String) element;
+                    id = Long.valueOf(path.substring(path.lastIndexOf('.') + 1));
+                }
+                OrganizationDTO organization = hierarchyIndex.getOrganization(id);
+                if (organization != null)
+                    orgs.add(organization);
+            }
+        }
+        return orgs;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Override streams the claims through a JwtTokenWriter, which also adds the kid header, when signing with a key
+     * provider.
+     */
+    @Override
+    protected String encode(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        if (tokenWriter == null)
+            return super.encode(accessToken, authentication);
+        return tokenWriter.write(accessToken, authentication);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Override verifies the token with the key named by its kid header when signing with a key provider.
+     */
+    @Override
+    protected Map<String, Object> decode(String token) {
+        if (verifiers.isEmpty())
+            return super.decode(token);
+
+        try {
+            String kid = JwtHelper.headers(token).get("kid");
+            SignatureVerifier verifier = verifiers.get(kid);
+            if (verifier == null)
+                throw new InvalidTokenException("Unknown signing key: " + kid);
+
+            Jwt jwt = JwtHelper.decodeAndVerify(token, verifier);
+            Map<String, Object> claims = jsonParser.parseMap(jwt.getClaims());
+            if (claims.get(AccessTokenConverter.EXP) instanceof Integer) {
+                Integer expiry = (Integer) claims.get(AccessTokenConverter.EXP);
+                claims.put(AccessTokenConverter.EXP, Long.valueOf(expiry));
+            }
+            getJwtClaimsSetVerifier().verify(claims);
+            return claims;
+        } catch (InvalidTokenException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new InvalidTokenException("Cannot convert access token to JSON", e);
+        }
+    }
+
+    /**
+     * Serialized organization claim together with the memberships it was serialized from.
+     */
+    private static class OrganizationClaim {
+        private final Map<Long, OrganizationDTO> organizations;
+        private final RawValue json;
+
+        private OrganizationClaim(Collection<OrganizationDTO> organizations, RawValue json) {
+            this.organizations = new HashMap<>();
+            for (OrganizationDTO o: organizations)
+                this.organizations.put(o.getId(), new OrganizationDTO(o.getId(), o.getName(), o.getPath(), o.getEnabled()));
+            this.json = json;
+        }
+
+        private boolean matches(Collection<OrganizationDTO> current) {
+            if (current == null || current.size() != organizations.size())
+                return false;
+            for (OrganizationDTO o: current) {
+                OrganizationDTO memo = organizations.get(o.getId());
+                if (memo == null || !Objects.equals(memo.getName(), o.getName())
+                        || !Objects.equals(memo.getPath(), o.getPath())
+                        || !Objects.equals(memo.getEnabled(), o.getEnabled()))
+                    return false;
+            }
+            return true;
+        }
+    }
 }
@@ -5,21 +5,37 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 
 import java.util.Collection;
+import java.util.function.Supplier;
 
 /**
  * @author Jonas Fredén-Lundvall (jonlundv@kth.se)
  *
- * Custom subclass that models core user information retrieved by a UserDetailsService.
+ * Custom subclass that models core user information retrieved by a UserDetailsService. Organization memberships can
+ * be given as a loader that is only run when the memberships are first read. The security stamp is the stamp of the
+ * user at the time the details were loaded.
  */
 public class CustomUserDetails extends User {
 
     private Long id;
+    private Long securityStamp;
     private Collection<OrganizationDTO> organizations;
+    private Supplier<Collection<OrganizationDTO>> organizationsLoader;
 
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
-    public Collection<OrganizationDTO> getOrganizations() { return organizations; }
-    public void setOrganizations(Collection<OrganizationDTO> organizations) { this.organizations = organizations; }
+    public Long getSecurityStamp() { return securityStamp; }
+    public void setSecurityStamp(Long securityStamp) { this.securityStamp = securityStamp; }
+    public synchronized Collection<OrganizationDTO> getOrganizations() {
+        if (organizationsLoader != null) {
+            organizations = organizationsLoader.get();
+            organizationsLoader = null;
+        }
+        return organizations;
+    }
+    public synchronized void setOrganizations(Collection<OrganizationDTO> organizations) {
+        this.organizations = organizations;
+        this.organizationsLoader = null;
+    }
 
     public CustomUserDetails(String username, String password, Collection<? extends GrantedAuthority> authorities) {
         super(username, password, authorities);
@@ -30,4 +46,10 @@ public class CustomUserDetails extends User {
         this.id = id;
         this.organizations = organizations;
     }
+
+    public CustomUserDetails(String username, String password, Collection<? extends GrantedAuthority> authorities, Long id, Supplier<Collection<OrganizationDTO>> organizationsLoader) {
+        super(username, password, authorities);
+        this.id = id;
+        this.organizationsLoader = organizationsLoader;
+    }
 }
@@ -20,7 +20,10 @@ import java.util.Set;
 /**
  * @author Jonas Fredén-Lundvall (jonlundv@kth.se)
  *
- * Custom implementation of core interface UserDetailsService which loads user-specific data.
+ * Custom implementation of core interface UserDetailsService which loads user-specific data. Loaded user details are
+ * cached by username, see UserDetailsCache, and
+ * reloaded once SecurityStampRegistry holds a newer security stamp for the user, which is how changes made on other
+ * nodes reach the cache.
  */
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
@@ -29,10 +32,17 @@ public class CustomUserDetailsService implements UserDetailsService {
 
     private final MapperUtil mapperUtil;
 
+    private final UserDetailsCache userDetailsCache;
+
+    private final SecurityStampRegistry securityStampRegistry;
+
     @Autowired
-    public CustomUserDetailsService(UserService userService, MapperUtil mapperUtil) {
+    public CustomUserDetailsService(UserService userService, MapperUtil mapperUtil, UserDetailsCache userDetailsCache,
+                                    SecurityStampRegistry securityStampRegistry) {
         this.userService = userService;
         this.mapperUtil = mapperUtil;
+        this.userDetailsCache = userDetailsCache;
+        this.securityStampRegistry = securityStampRegistry;
     }
 
     /**
@@ -42,6 +52,15 @@ public class CustomUserDetailsService implements UserDetailsService {
      */
     @Override
     public UserDetails loadUserByUsername(String userName) throws UsernameNotFoundException {
+        CustomUserDetails cached = userDetailsCache.get(userName);
+        if (cached != null) {
+            if (securityStampRegistry.isCurrent(cached.getId(), cached.getSecurityStamp()))
+                return cached;
+            // Changed on another node after the details were cached
+            userDetailsCache.invalidate(userName);
+        }
+
+        long generation = userDetailsCache.generation();
         User user = userService.getUserByUsername(userName);
         GrantedAuthority authority = new SimpleGrantedAuthority(user.getRole());
 
@@ -51,7 +70,11 @@ public class CustomUserDetailsService implements UserDetailsService {
             organizationDTOS.add(mapperUtil.convertToDto(o));
         }
 
-        return new CustomUserDetails(user.getUsername(), user.getPassword(), Arrays.asList(authority),
-                user.getId(), organizationDTOS);
+        CustomUserDetails userDetails = new CustomUserDetails(user.getUsername(), user.getPassword(),
+                Arrays.asList(authority), user.getId(), organizationDTOS);
+        userDetails.setSecurityStamp(user.getSecurityStamp());
+        userDetailsCache.put(userDetails, generation);
+
+        return userDetails;
     }
 }
\ No newline at end of file
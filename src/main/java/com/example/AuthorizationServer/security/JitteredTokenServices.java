@@ -0,0 +1,88 @@
+package com.example.AuthorizationServer.security;
+
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.ClientRegistrationException;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Token services that shorten the validity of each issued access and refresh token by a random amount, so that
+ * clients that logged in at the same time do not all refresh at the same time. The jitter is a fraction of the
+ * configured validity, read from the "expiry_jitter" additional information of the client or else the default. Tokens
+ * are never valid for longer than configured.
+ */
+public class JitteredTokenServices extends DefaultTokenServices {
+
+    public static final String EXPIRY_JITTER = "expiry_jitter";
+
+    private ClientDetailsService clientDetailsService;
+
+    private double defaultExpiryJitter;
+
+    /**
+     * Sets the jitter of clients that do not configure their own.
+     *
+     * @param defaultExpiryJitter the largest fraction of the validity that is cut off, between 0 and 1.
+     */
+    public void setDefaultExpiryJitter(double defaultExpiryJitter) {
+        this.defaultExpiryJitter = checkJitter(defaultExpiryJitter);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setClientDetailsService(ClientDetailsService clientDetailsService) {
+        super.setClientDetailsService(clientDetailsService);
+        this.clientDetailsService = clientDetailsService;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int getAccessTokenValiditySeconds(OAuth2Request clientAuth) {
+        return jitter(super.getAccessTokenValiditySeconds(clientAuth), clientAuth);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int getRefreshTokenValiditySeconds(OAuth2Request clientAuth) {
+        return jitter(super.getRefreshTokenValiditySeconds(clientAuth), clientAuth);
+    }
+
+    private int jitter(int validitySeconds, OAuth2Request clientAuth) {
+        double jitter = expiryJitter(clientAuth.getClientId());
+        // Zero and negative validities mean tokens that do not expire
+        if (validitySeconds <= 0 || jitter == 0)
+            return validitySeconds;
+        int cut = (int) (ThreadLocalRandom.current().nextDouble() * jitter * validitySeconds);
+        return Math.max(1, validitySeconds - cut);
+    }
+
+    private double expiryJitter(String clientId) {
+        if (clientDetailsService == null)
+            return defaultExpiryJitter;
+        ClientDetails client;
+        try {
+            client = clientDetailsService.loadClientByClientId(clientId);
+        } catch (ClientRegistrationException e) {
+            return defaultExpiryJitter;
+        }
+        Object jitter = client.getAdditionalInformation().get(EXPIRY_JITTER);
+        if (jitter == null)
+            return defaultExpiryJitter;
+        return checkJitter(Double.parseDouble(jitter.toString()));
+    }
+
+    private static double checkJitter(double jitter) {
+        if (jitter < 0 || jitter >= 1)
+            throw new IllegalArgumentException("Expiry jitter must be at least 0 and less than 1, was " + jitter);
+        return jitter;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.AuthorizationServer.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.security.cert.Certificate;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.*;
+
+/**
+ * Loads the RSA key pair used for signing access tokens from a PKCS12 keystore, together with the public keys of any
+ * previously used keys that tokens still in circulation may have been signed with. Every key is identified by its
+ * RFC 7638 thumbprint, which is used as the kid header of signed tokens and published in the JSON Web Key Set.
+ *
+ * To rotate keys, add a new key pair to the keystore, point authserver.jwt.key-alias at it and list the alias of the
+ * old key in authserver.jwt.previous-key-aliases until the longest lived token signed with it has expired.
+ */
+@Component
+public class JwtKeyProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwtKeyProvider.class);
+
+    private final KeyPair signingKeyPair;
+
+    private final String signingKeyId;
+
+    // Key id -> public key, including the signing key. Iteration order puts the signing key first.
+    private final Map<String, RSAPublicKey> verificationKeys;
+
+    private final Map<String, Object> jwkSet;
+
+    @Autowired
+    public JwtKeyProvider(@Value("${authserver.jwt.key-store:classpath:authserver.p12}") Resource keyStoreResource,
+                          @Value("${authserver.jwt.key-store-password:authserver}") String keyStorePassword,
+                          @Value("${authserver.jwt.key-alias:authserver}") String keyAlias,
+                          @Value("${authserver.jwt.key-password:${authserver.jwt.key-store-password:authserver}}") String keyPassword,
+                          @Value("${authserver.jwt.previous-key-aliases:}") String[] previousKeyAliases)
+            throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = keyStoreResource.getInputStream()) {
+            keyStore.load(in, keyStorePassword.toCharArray());
+        }
+
+        Key privateKey = keyStore.getKey(keyAlias, keyPassword.toCharArray());
+        if (!(privateKey instanceof RSAPrivateKey))
+            throw new KeyStoreException("Keystore entry " + keyAlias + " is not an RSA private key.");
+        RSAPublicKey publicKey = loadPublicKey(keyStore, keyAlias);
+
+        this.signingKeyPair = new KeyPair(publicKey, (PrivateKey) privateKey);
+        this.signingKeyId = thumbprint(publicKey);
+
+        Map<String, RSAPublicKey> keys = new LinkedHashMap<>();
+        keys.put(signingKeyId, publicKey);
+        for (String alias: previousKeyAliases) {
+            if (alias.trim().isEmpty())
+                continue;
+            RSAPublicKey previousKey = loadPublicKey(keyStore, alias.trim());
+            keys.put(thumbprint(previousKey), previousKey);
+        }
+        this.verificationKeys = Collections.unmodifiableMap(keys);
+        this.jwkSet = buildJwkSet(keys);
+
+        logger.info("Signing access tokens with key {} ({} verification keys)", signingKeyId, keys.size());
+    }
+
+    /**
+     * Fetches the key pair used for signing new tokens.
+     *
+     * @return the key pair.
+     */
+    public KeyPair getSigningKeyPair() {
+        return signingKeyPair;
+    }
+
+    /**
+     * Fetches the key id of the key used for signing new tokens.
+     *
+     * @return the key id.
+     */
+    public String getSigningKeyId() {
+        return signingKeyId;
+    }
+
+    /**
+     * Fetches all public keys that tokens may be verified with, keyed by key id.
+     *
+     * @return the public keys.
+     */
+    public Map<String, RSAPublicKey> getVerificationKeys() {
+        return verificationKeys;
+    }
+
+    /**
+     * Fetches the JSON Web Key Set of all verification keys.
+     *
+     * @return the key set.
+     */
+    public Map<String, Object> getJwkSet() {
+        return jwkSet;
+    }
+
+    private static RSAPublicKey loadPublicKey(KeyStore keyStore, String alias) throws KeyStoreException {
+        Certificate certificate = keyStore.getCertificate(alias);
+        if (certificate == null || !(certificate.getPublicKey() instanceof RSAPublicKey))
+            throw new KeyStoreException("Keystore entry " + alias + " does not hold an RSA certificate.");
+        return (RSAPublicKey) certificate.getPublicKey();
+    }
+
+    private static Map<String, Object> buildJwkSet(Map<String, RSAPublicKey> keys) {
+        List<Map<String, String>> jwks = new ArrayList<>();
+        for (Map.Entry<String, RSAPublicKey> entry: keys.entrySet()) {
+            Map<String, String> jwk = new LinkedHashMap<>();
+            jwk.put("kty", "RSA");
+            jwk.put("use", "sig");
+            jwk.put("alg", "RS256");
+            jwk.put("kid", entry.getKey());
+            jwk.put("n", base64Url(entry.getValue().getModulus()));
+            jwk.put("e", base64Url(entry.getValue().getPublicExponent()));
+            jwks.add(Collections.unmodifiableMap(jwk));
+        }
+        Map<String, Object> jwkSet = new LinkedHashMap<>();
+        jwkSet.put("keys", Collections.unmodifiableList(jwks));
+        return Collections.unmodifiableMap(jwkSet);
+    }
+
+    /**
+     * Computes the RFC 7638 JWK thumbprint of an RSA public key.
+     */
+    private static String thumbprint(RSAPublicKey key) throws NoSuchAlgorithmException {
+        // Required members in lexicographic order without whitespace
+        String canonical = "{\"e\":\"" + base64Url(key.getPublicExponent()) + "\",\"kty\":\"RSA\",\"n\":\""
+                + base64Url(key.getModulus()) + "\"}";
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+
+    /**
+     * Encodes an unsigned big-endian integer as base64url without padding, as required for JWK members.
+     */
+    private static String base64Url(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        // Drop the sign byte that BigInteger adds when the most significant bit is set
+        if (bytes.length > 1 && bytes[0] == 0)
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.AuthorizationServer.security;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.UserAuthenticationConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.*;
+
+/**
+ * Writes RS256 signed JWT access tokens. Produces the same claims as DefaultAccessTokenConverter, but streams them
+ * straight into a reused buffer instead of building an intermediate claims map, uses a header encoded once up front and
+ * keeps one initialized Signature per thread.
+ *
+ * Claim values already serialized to JSON can be passed in the additional information of the token as RawValue.
+ */
+public class JwtTokenWriter {
+
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    // Buffers larger than this are not kept between tokens
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final byte[] encodedHeader;
+
+    private final ThreadLocal<Signature> signatures;
+
+    private final ThreadLocal<ByteArrayOutputStream> buffers =
+            ThreadLocal.withInitial(() -> new ByteArrayOutputStream(INITIAL_BUFFER_SIZE));
+
+    public JwtTokenWriter(RSAPrivateKey signingKey, String keyId) {
+        Map<String, String> header = new LinkedHashMap<>();
+        header.put("alg", "RS256");
+        header.put("typ", "JWT");
+        header.put("kid", keyId);
+        try {
+            this.encodedHeader = BASE64_URL.encode(OBJECT_MAPPER.writeValueAsBytes(header));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        this.signatures = ThreadLocal.withInitial(() -> {
+            try {
+                // A Signature returns to its initialized state after signing, so it can be reused
+                Signature signature = Signature.getInstance("SHA256withRSA");
+                signature.initSign(signingKey);
+                return signature;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * Writes a signed token.
+     *
+     * @param accessToken the access token.
+     * @param authentication the authentication the token is issued for.
+     * @return the encoded token.
+     */
+    public String write(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        ByteArrayOutputStream buffer = buffers.get();
+        buffer.reset();
+        try {
+            writeClaims(buffer, accessToken, authentication);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot convert access token to JSON", e);
+        }
+        byte[] encodedClaims = BASE64_URL.encode(buffer.toByteArray());
+        if (buffer.size() > MAX_RETAINED_BUFFER_SIZE)
+            buffers.remove();
+
+        // header.claims
+        byte[] signingInput = new byte[encodedHeader.length + 1 + encodedClaims.length];
+        System.arraycopy(encodedHeader, 0, signingInput, 0, encodedHeader.length);
+        signingInput[encodedHeader.length] = '.';
+        System.arraycopy(encodedClaims, 0, signingInput, encodedHeader.length + 1, encodedClaims.length);
+
+        byte[] encodedSignature;
+        try {
+            Signature signature = signatures.get();
+            signature.update(signingInput);
+            encodedSignature = BASE64_URL.encode(signature.sign());
+        } catch (GeneralSecurityException e) {
+            signatures.remove();
+            throw new IllegalStateException("Cannot sign access token", e);
+        }
+
+        // header.claims.signature
+        StringBuilder token = new StringBuilder(signingInput.length + 1 + encodedSignature.length);
+        token.append(new String(signingInput, StandardCharsets.US_ASCII))
+                .append('.')
+                .append(new String(encodedSignature, StandardCharsets.US_ASCII));
+        return token.toString();
+    }
+
+    private static void writeClaims(ByteArrayOutputStream out, OAuth2AccessToken accessToken,
+                                    OAuth2Authentication authentication) throws IOException {
+        OAuth2Request request = authentication.getOAuth2Request();
+        Map<String, Object> additionalInformation = accessToken.getAdditionalInformation();
+
+        try (JsonGenerator json = OBJECT_MAPPER.getFactory().createGenerator(out)) {
+            json.writeStartObject();
+
+            if (!authentication.isClientOnly()) {
+                Authentication user = authentication.getUserAuthentication();
+                writeField(json, additionalInformation, UserAuthenticationConverter.USERNAME, user.getName());
+                writeAuthorities(json, additionalInformation, user.getAuthorities());
+            } else {
+                writeAuthorities(json, additionalInformation, request.getAuthorities());
+            }
+            if (accessToken.getScope() != null && !additionalInformation.containsKey(AccessTokenConverter.SCOPE)) {
+                json.writeArrayFieldStart(AccessTokenConverter.SCOPE);
+                for (String scope: accessToken.getScope())
+                    json.writeString(scope);
+                json.writeEndArray();
+            }
+            if (accessToken.getExpiration() != null && !additionalInformation.containsKey(AccessTokenConverter.EXP))
+                json.writeNumberField(AccessTokenConverter.EXP, accessToken.getExpiration().getTime() / 1000);
+
+            // Includes jti and, for refresh tokens, ati
+            for (Map.Entry<String, Object> entry: additionalInformation.entrySet()) {
+                if (AccessTokenConverter.CLIENT_ID.equals(entry.getKey()) || AccessTokenConverter.AUD.equals(entry.getKey()))
+                    continue;
+                json.writeFieldName(entry.getKey());
+                json.writeObject(entry.getValue());
+            }
+
+            json.writeStringField(AccessTokenConverter.CLIENT_ID, request.getClientId());
+            if (request.getResourceIds() != null && !request.getResourceIds().isEmpty()) {
+                json.writeArrayFieldStart(AccessTokenConverter.AUD);
+                for (String resourceId: request.getResourceIds())
+                    json.writeString(resourceId);
+                json.writeEndArray();
+            }
+
+            json.writeEndObject();
+        }
+    }
+
+    private static void writeField(JsonGenerator json, Map<String, Object> additionalInformation, String name,
+                                   String value) throws IOException {
+        // Additional information overrides standard claims, as with DefaultAccessTokenConverter
+        if (!additionalInformation.containsKey(name))
+            json.writeStringField(name, value);
+    }
+
+    private static void writeAuthorities(JsonGenerator json, Map<String, Object> additionalInformation,
+                                         Collection<? extends GrantedAuthority> authorities) throws IOException {
+        if (authorities == null || authorities.isEmpty()
+                || additionalInformation.containsKey(UserAuthenticationConverter.AUTHORITIES))
+            return;
+
+        json.writeArrayFieldStart(UserAuthenticationConverter.AUTHORITIES);
+        if (authorities.size() == 1) {
+            json.writeString(authorities.iterator().next().getAuthority());
+        } else {
+            // Written as a set, as with DefaultAccessTokenConverter
+            for (String authority: new LinkedHashSet<>(toAuthorityStrings(authorities)))
+                json.writeString(authority);
+        }
+        json.writeEndArray();
+    }
+
+    private static List<String> toAuthorityStrings(Collection<? extends GrantedAuthority> authorities) {
+        List<String> strings = new ArrayList<>(authorities.size());
+        for (GrantedAuthority authority: authorities)
+            strings.add(authority.getAuthority());
+        return strings;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.AuthorizationServer.security;
+
+/**
+ * Formats of the organization membership claim ("orgs") in issued tokens.
+ */
+public enum OrganizationClaimMode {
+
+    /**
+     * Every membership as an object with id, name, path and enabled flag.
+     */
+    FULL,
+
+    /**
+     * Every membership as an organization id.
+     */
+    IDS,
+
+    /**
+     * Every membership as an organization path (e.g. "1.2.5"), whose last id is the id of the organization. Lets
+     * resource servers check ancestry without looking organizations up.
+     */
+    PATHS
+}
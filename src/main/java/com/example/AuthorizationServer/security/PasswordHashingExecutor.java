@@ -0,0 +1,89 @@
+package com.example.AuthorizationServer.security;
+
+import com.example.AuthorizationServer.utility.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Bounded executor that runs password hashing for bulk operations on a fixed pool of threads. Results are returned in
+ * input order. When the work queue is full the submitting thread hashes the password itself, which throttles
+ * producers instead of growing the queue. Any gain over hashing on the request thread depends on the number of cores
+ * and has not been measured, see PasswordHashingBenchmark.
+ */
+@Component
+public class PasswordHashingExecutor implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHashingExecutor.class);
+
+    private final BCryptPasswordEncoder bCryptPasswordEncoder;
+
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public PasswordHashingExecutor(BCryptPasswordEncoder bCryptPasswordEncoder,
+                                   @Value("${authserver.password-hashing.threads:0}") int threads,
+                                   @Value("${authserver.password-hashing.queue-capacity:1000}") int queueCapacity) {
+        this.bCryptPasswordEncoder = bCryptPasswordEncoder;
+
+        // Default to one thread per available core
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new NamedThreadFactory("password-hashing-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        logger.info("Password hashing executor started with {} threads", poolSize);
+    }
+
+    /**
+     * Hashes passwords in parallel.
+     *
+     * @param rawPasswords the passwords to hash.
+     * @return the hashed passwords in the same order as the given passwords.
+     * @throws IllegalArgumentException if a password could not be hashed. The first failing password in input order
+     * is reported.
+     */
+    public List<String> encodeAll(List<String> rawPasswords) {
+        List<Future<String>> futures = new ArrayList<>(rawPasswords.size());
+        for (String rawPassword: rawPasswords) {
+            futures.add(executor.submit(() -> bCryptPasswordEncoder.encode(rawPassword)));
+        }
+
+        List<String> encodedPasswords = new ArrayList<>(rawPasswords.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                encodedPasswords.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                cancelFrom(futures, i + 1);
+                throw new IllegalArgumentException("Password at position " + i + " could not be hashed.", e.getCause());
+            } catch (InterruptedException e) {
+                cancelFrom(futures, i);
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while hashing passwords.", e);
+            }
+        }
+        return encodedPasswords;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static void cancelFrom(List<Future<String>> futures, int from) {
+        for (int i = from; i < futures.size(); i++) {
+            futures.get(i).cancel(false);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.AuthorizationServer.security;
+
+import com.example.AuthorizationServer.bo.dto.PasswordVerificationStatsDTO;
+import com.example.AuthorizationServer.utility.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded executor that runs password verification for logins off the request threads, so that a surge of password
+ * grants can only occupy a fixed number of cores while the rest of the API keeps serving requests. Verifications that
+ * do not fit in the queue, or that wait too long for a thread, fail fast with PasswordVerificationUnavailableException.
+ */
+@Component
+public class PasswordVerificationExecutor implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordVerificationExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+
+    private final int queueCapacity;
+
+    private final long maxWaitMillis;
+
+    // Metrics
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    @Autowired
+    public PasswordVerificationExecutor(@Value("${authserver.password-verification.threads:0}") int threads,
+                                        @Value("${authserver.password-verification.queue-capacity:100}") int queueCapacity,
+                                        @Value("${authserver.password-verification.max-wait-ms:5000}") long maxWaitMillis) {
+        // Default to one thread per available core
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.queueCapacity = queueCapacity;
+        this.maxWaitMillis = maxWaitMillis;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new NamedThreadFactory("password-verification-"),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        logger.info("Password verification executor started with {} threads and queue capacity {}", poolSize,
+                queueCapacity);
+    }
+
+    /**
+     * Runs a password verification on the executor and waits for its result.
+     *
+     * @param verification the verification to run.
+     * @return the result of the verification.
+     * @throws PasswordVerificationUnavailableException if the queue is full or the verification could not start in
+     * time.
+     */
+    public boolean verify(BooleanSupplier verification) {
+        long submitted = System.nanoTime();
+
+        Future<Boolean> future;
+        try {
+            future = executor.submit(() -> {
+                recordWait(System.nanoTime() - submitted);
+                return verification.getAsBoolean();
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordVerificationUnavailableException("Too many concurrent logins, try again later.", e);
+        }
+
+        try {
+            boolean matches = future.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+            completed.increment();
+            return matches;
+        } catch (TimeoutException e) {
+            // Frees the queue slot if the verification has not started yet
+            future.cancel(false);
+            timedOut.increment();
+            throw new PasswordVerificationUnavailableException("Too many concurrent logins, try again later.", e);
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new PasswordVerificationUnavailableException("Interrupted while verifying password.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Password verification failed.", e.getCause());
+        }
+    }
+
+    /**
+     * Fetches a snapshot of the executor metrics.
+     *
+     * @return the metrics.
+     */
+    public PasswordVerificationStatsDTO getStats() {
+        PasswordVerificationStatsDTO stats = new PasswordVerificationStatsDTO();
+        stats.setThreads(executor.getMaximumPoolSize());
+        stats.setActiveThreads(executor.getActiveCount());
+        stats.setQueueDepth(executor.getQueue().size());
+        stats.setQueueCapacity(queueCapacity);
+        stats.setCompleted(completed.sum());
+        stats.setRejected(rejected.sum());
+        stats.setTimedOut(timedOut.sum());
+        long started = executor.getCompletedTaskCount() + executor.getActiveCount();
+        stats.setAverageWaitMillis(started == 0 ? 0 : totalWaitNanos.sum() / (double) started / 1_000_000.0);
+        stats.setMaxWaitMillis(maxWaitNanos.get() / 1_000_000.0);
+        return stats;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void recordWait(long waitNanos) {
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+}
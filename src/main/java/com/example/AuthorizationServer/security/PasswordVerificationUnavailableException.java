@@ -0,0 +1,36 @@
+package com.example.AuthorizationServer.security;
+
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+
+/**
+ * Thrown when a password can not be verified because the password verification executor is saturated. Rendered by the
+ * token endpoint as a 503 response with the temporarily_unavailable error code.
+ */
+public class PasswordVerificationUnavailableException extends OAuth2Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public PasswordVerificationUnavailableException(String msg) {
+        super(msg);
+    }
+
+    public PasswordVerificationUnavailableException(String msg, Throwable t) {
+        super(msg, t);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getOAuth2ErrorCode() {
+        return "temporarily_unavailable";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getHttpErrorCode() {
+        return 503;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.AuthorizationServer.security;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * BCrypt password encoder that runs password matching on the PasswordVerificationExecutor instead of on the calling
+ * request thread. Used for verifying user passwords on login.
+ */
+public class PooledBCryptPasswordEncoder extends BCryptPasswordEncoder {
+
+    private final PasswordVerificationExecutor passwordVerificationExecutor;
+
+    public PooledBCryptPasswordEncoder(PasswordVerificationExecutor passwordVerificationExecutor) {
+        this.passwordVerificationExecutor = passwordVerificationExecutor;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Override runs the match on the password verification executor.
+     */
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return passwordVerificationExecutor.verify(() -> super.matches(rawPassword, encodedPassword));
+    }
+}
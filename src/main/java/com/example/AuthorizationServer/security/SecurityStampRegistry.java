@@ -0,0 +1,140 @@
+package com.example.AuthorizationServer.security;
+
+import com.example.AuthorizationServer.repository.DeletedUserRepository;
+import com.example.AuthorizationServer.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory table of the security stamps of users whose stamp has changed recently, keyed by user id. Tokens carry
+ * the stamp of their user at issue time, so a token whose stamp is older than the one in the table was issued before
+ * the password, enabled flag or memberships of the user changed and is no longer accepted.
+ *
+ * Changes made on this node are recorded once their transaction commits. Changes made on other nodes are picked up by
+ * polling the user table, and the tombstones of deleted users, for stamps that have moved since the previous poll.
+ * Tombstones older than the retention are removed by the poll as well. A stamp only needs to be kept until every
+ * token issued before it has expired, so the retention must be at least the longest token validity.
+ */
+@Component
+public class SecurityStampRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(SecurityStampRegistry.class);
+
+    private final UserRepository userRepository;
+
+    private final DeletedUserRepository deletedUserRepository;
+
+    private final long retentionMillis;
+
+    private final long maxClockSkewMillis;
+
+    private final Map<Long, Long> stamps = new ConcurrentHashMap<>();
+
+    // Stamps changed at or after this time, minus the allowed clock skew, are fetched by the next poll
+    private volatile long pollFrom;
+
+    @Autowired
+    public SecurityStampRegistry(UserRepository userRepository, DeletedUserRepository deletedUserRepository,
+                                 @Value("${authserver.security-stamp.retention-seconds:900}") long retentionSeconds,
+                                 @Value("${authserver.security-stamp.max-clock-skew-ms:5000}") long maxClockSkewMillis) {
+        this.userRepository = userRepository;
+        this.deletedUserRepository = deletedUserRepository;
+        this.retentionMillis = retentionSeconds * 1000;
+        this.maxClockSkewMillis = maxClockSkewMillis;
+        this.pollFrom = System.currentTimeMillis() - retentionMillis;
+    }
+
+    /**
+     * Checks if a token stamp is current, i.e. the user has not changed since a token with the stamp was issued.
+     *
+     * @param userId the id of the user.
+     * @param tokenStamp the stamp of the token, or null if the token has none.
+     * @return true if the stamp is current.
+     */
+    public boolean isCurrent(Long userId, Long tokenStamp) {
+        Long stamp = userId == null ? null : stamps.get(userId);
+        if (stamp == null)
+            return true;
+        return tokenStamp != null && tokenStamp >= stamp;
+    }
+
+    /**
+     * Records a new stamp of a user, once the current transaction commits if there is one.
+     *
+     * @param userId the id of the user.
+     * @param stamp the new stamp.
+     */
+    public void record(Long userId, long stamp) {
+        if (userId != null)
+            record(Collections.singletonList(userId), stamp);
+    }
+
+    /**
+     * Records a new stamp of several users, once the current transaction commits if there is one.
+     *
+     * @param userIds the ids of the users.
+     * @param stamp the new stamp.
+     */
+    public void record(Collection<Long> userIds, long stamp) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            put(userIds, stamp);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                put(userIds, stamp);
+            }
+        });
+    }
+
+    /**
+     * Fetches the number of stamps in the table.
+     *
+     * @return the number of stamps.
+     */
+    public int size() {
+        return stamps.size();
+    }
+
+    /**
+     * Fetches stamps changed on any node since the previous poll and drops stamps older than the retention.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${authserver.security-stamp.poll-interval-ms:2000}")
+    public void poll() {
+        long started = System.currentTimeMillis();
+        try {
+            long since = pollFrom - maxClockSkewMillis;
+            List<Object[]> changed = new ArrayList<>(userRepository.findSecurityStampsChangedSince(since));
+            changed.addAll(deletedUserRepository.findSecurityStampsChangedSince(since));
+            for (Object[] row: changed)
+                stamps.merge((Long) row[0], (Long) row[1], Math::max);
+            pollFrom = started;
+            deletedUserRepository.deleteStampedBefore(started - retentionMillis);
+        } catch (RuntimeException e) {
+            // Retried from the same point on the next poll
+            logger.warn("Polling security stamps failed: {}", e.getMessage());
+        }
+
+        long oldest = started - retentionMillis;
+        stamps.values().removeIf(stamp -> stamp < oldest);
+    }
+
+    private void put(Collection<Long> userIds, long stamp) {
+        for (Long userId: userIds)
+            stamps.merge(userId, stamp, Math::max);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.AuthorizationServer.security;
+
+import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
+import com.example.AuthorizationServer.service.OrganizationHierarchyIndex;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetailsByNameServiceWrapper;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationProvider;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Authenticates the user of a refresh token grant. The user embedded in the refresh token is reused as long as the
+ * security stamp of the user is unchanged since the token was issued, so a refresh only costs a lookup in the
+ * SecurityStampRegistry instead of loading the user and its organizations. Memberships are taken from the
+ * OrganizationHierarchyIndex so that they reflect the current name, path and enabled flag of each organization. The
+ * index reflects writes on other nodes within one poll interval, the same rule as for the organization checks of
+ * OrganizationService. Memberships of deleted organizations are left out.
+ *
+ * The user is loaded through the user details service, as with the default refresh handling, when the token has no
+ * embedded user or stamp, or when the stamp has changed.
+ */
+public class SnapshotRefreshAuthenticationProvider extends PreAuthenticatedAuthenticationProvider {
+
+    private final SecurityStampRegistry securityStampRegistry;
+
+    private final OrganizationHierarchyIndex hierarchyIndex;
+
+    public SnapshotRefreshAuthenticationProvider(CustomUserDetailsService userDetailsService,
+                                                 SecurityStampRegistry securityStampRegistry,
+                                                 OrganizationHierarchyIndex hierarchyIndex) {
+        this.securityStampRegistry = securityStampRegistry;
+        this.hierarchyIndex = hierarchyIndex;
+        setPreAuthenticatedUserDetailsService(new UserDetailsByNameServiceWrapper<>(userDetailsService));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Override reuses the user embedded in the refresh token when its security stamp is current.
+     */
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        if (!supports(authentication.getClass()))
+            return null;
+
+        CustomUserDetails snapshot = snapshotOf(authentication);
+        if (snapshot == null || snapshot.getSecurityStamp() == null
+                || !securityStampRegistry.isCurrent(snapshot.getId(), snapshot.getSecurityStamp()))
+            return super.authenticate(authentication);
+
+        CustomUserDetails user = new CustomUserDetails(snapshot.getUsername(), "", snapshot.getAuthorities(),
+                snapshot.getId(), () -> currentOrganizations(snapshot));
+        user.setSecurityStamp(snapshot.getSecurityStamp());
+
+        PreAuthenticatedAuthenticationToken result = new PreAuthenticatedAuthenticationToken(user,
+                authentication.getCredentials(), user.getAuthorities());
+        result.setDetails(authentication.getDetails());
+        return result;
+    }
+
+    /**
+     * Fetches the user embedded in the refresh token, which CachingJwtTokenStore attaches to the details of the user
+     * authentication.
+     */
+    private static CustomUserDetails snapshotOf(Authentication authentication) {
+        if (!(authentication.getPrincipal() instanceof Authentication))
+            return null;
+        Object details = ((Authentication) authentication.getPrincipal()).getDetails();
+        return details instanceof CustomUserDetails ? (CustomUserDetails) details : null;
+    }
+
+    private List<OrganizationDTO> currentOrganizations(CustomUserDetails snapshot) {
+        List<OrganizationDTO> organizations = new ArrayList<>();
+        for (OrganizationDTO o: snapshot.getOrganizations()) {
+            OrganizationDTO current = hierarchyIndex.getOrganization(o.getId());
+            if (current != null)
+                organizations.add(current);
+        }
+        return organizations;
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.AuthorizationServer.security;
+
+import com.example.AuthorizationServer.bo.entity.ClientRevocation;
+import com.example.AuthorizationServer.repository.ClientRevocationRepository;
+import com.example.AuthorizationServer.repository.RevokedTokenRepository;
+import com.example.AuthorizationServer.utility.BloomFilter;
+import com.example.AuthorizationServer.utility.ExpiringLruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Denylist of revoked tokens, shared by all nodes through the revoked_token and client_revocation tables. Tokens are
+ * revoked one by one by jti, or all tokens issued to a client before a point in time at once.
+ *
+ * Only a Bloom filter of the revoked jtis is kept in memory, so the common case of a token that is not revoked costs a
+ * hash of its jti and a few bit reads. Tokens that hit the filter are confirmed against the database and the answer is
+ * memoized. Revocations made on other nodes are polled, and a periodic sweep deletes entries whose token has expired
+ * and rebuilds the filter from the remaining ones.
+ */
+@Component
+public class TokenRevocationList {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    private static final int CONFIRMATION_MEMO_SIZE = 10000;
+
+    private static final long CONFIRMATION_MEMO_TTL_MILLIS = 10 * 60 * 1000;
+
+    private final RevokedTokenRepository revokedTokenRepository;
+
+    private final ClientRevocationRepository clientRevocationRepository;
+
+    private final long expectedEntries;
+
+    private final double falsePositiveRate;
+
+    private final long clientRetentionMillis;
+
+    private final long maxClockSkewMillis;
+
+    private volatile BloomFilter filter;
+
+    // Jti -> whether the token is revoked, for jtis that hit the filter
+    private final ExpiringLruCache<String, Boolean> confirmations =
+            new ExpiringLruCache<>(CONFIRMATION_MEMO_SIZE, CONFIRMATION_MEMO_TTL_MILLIS);
+
+    // Client id -> tokens issued before this time (epoch milliseconds) are revoked
+    private final Map<String, Long> clientRevocations = new ConcurrentHashMap<>();
+
+    // Revocations made at or after this time, minus the allowed clock skew, are fetched by the next poll
+    private volatile long pollFrom;
+
+    @Autowired
+    public TokenRevocationList(RevokedTokenRepository revokedTokenRepository,
+                               ClientRevocationRepository clientRevocationRepository,
+                               @Value("${authserver.revocation.expected-entries:100000}") long expectedEntries,
+                               @Value("${authserver.revocation.false-positive-rate:0.01}") double falsePositiveRate,
+                               @Value("${authserver.revocation.client-retention-seconds:900}") long retentionSeconds,
+                               @Value("${authserver.security-stamp.max-clock-skew-ms:5000}") long maxClockSkewMillis) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.clientRevocationRepository = clientRevocationRepository;
+        this.expectedEntries = expectedEntries;
+        this.falsePositiveRate = falsePositiveRate;
+        this.clientRetentionMillis = retentionSeconds * 1000;
+        this.maxClockSkewMillis = maxClockSkewMillis;
+        this.filter = new BloomFilter(expectedEntries, falsePositiveRate);
+        this.pollFrom = System.currentTimeMillis();
+    }
+
+    /**
+     * Checks if a token is revoked.
+     *
+     * @param jti the jti of the token.
+     * @param clientId the id of the client the token was issued to.
+     * @param issuedAtSeconds the time the token was issued in epoch seconds, or null if unknown.
+     * @return true if the token is revoked.
+     */
+    public boolean isRevoked(String jti, String clientId, Long issuedAtSeconds) {
+        if (clientId != null) {
+            Long revokedBefore = clientRevocations.get(clientId);
+            if (revokedBefore != null && (issuedAtSeconds == null || issuedAtSeconds * 1000 < revokedBefore))
+                return true;
+        }
+        if (jti == null || !filter.mightContain(jti))
+            return false;
+
+        Boolean revoked = confirmations.get(jti);
+        if (revoked == null) {
+            revoked = revokedTokenRepository.existsById(jti);
+            confirmations.put(jti, revoked);
+        }
+        return revoked;
+    }
+
+    /**
+     * Records the revocation of a token, once the current transaction commits if there is one.
+     *
+     * @param jti the jti of the token.
+     * @param expiresAt the expiry of the token in epoch milliseconds.
+     */
+    public void record(String jti, long expiresAt) {
+        afterCommit(() -> {
+            filter.put(jti);
+            confirmations.put(jti, true, expiresAt);
+        });
+    }
+
+    /**
+     * Records the revocation of all tokens issued to a client before a point in time, once the current transaction
+     * commits if there is one.
+     *
+     * @param clientId the id of the client.
+     * @param revokedBefore the point in time in epoch milliseconds.
+     */
+    public void recordClient(String clientId, long revokedBefore) {
+        afterCommit(() -> clientRevocations.merge(clientId, revokedBefore, Math::max));
+    }
+
+    /**
+     * Fetches the size of the Bloom filter.
+     *
+     * @return the number of bits.
+     */
+    public long filterBitCount() {
+        return filter.bitCount();
+    }
+
+    /**
+     * Fetches revocations made on any node since the previous poll.
+     */
+    @Scheduled(initialDelayString = "${authserver.revocation.poll-interval-ms:5000}",
+            fixedDelayString = "${authserver.revocation.poll-interval-ms:5000}")
+    public void poll() {
+        long started = System.currentTimeMillis();
+        try {
+            for (String jti: revokedTokenRepository.findJtisRevokedSince(pollFrom - maxClockSkewMillis)) {
+                filter.put(jti);
+                confirmations.invalidate(jti);
+            }
+            loadClientRevocations();
+            pollFrom = started;
+        } catch (RuntimeException e) {
+            // Retried from the same point on the next poll
+            logger.warn("Polling token revocations failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes revocations of expired tokens and rebuilds the Bloom filter from the remaining ones.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${authserver.revocation.sweep-interval-ms:600000}")
+    public void sweep() {
+        long started = System.currentTimeMillis();
+        try {
+            int swept = revokedTokenRepository.deleteExpired(started);
+            clientRevocationRepository.deleteRevokedBefore(started - clientRetentionMillis);
+
+            List<String> jtis = revokedTokenRepository.findUnexpiredJtis(started);
+            BloomFilter rebuilt = new BloomFilter(Math.max(expectedEntries, 2L * jtis.size()), falsePositiveRate);
+            for (String jti: jtis)
+                rebuilt.put(jti);
+            filter = rebuilt;
+
+            // Revocations committed while the filter was rebuilt may only have reached the old filter
+            for (String jti: revokedTokenRepository.findJtisRevokedSince(started - maxClockSkewMillis))
+                rebuilt.put(jti);
+            loadClientRevocations();
+
+            if (swept > 0)
+                logger.info("Swept {} expired token revocations, {} remain", swept, jtis.size());
+        } catch (RuntimeException e) {
+            logger.warn("Sweeping token revocations failed: {}", e.getMessage());
+        }
+    }
+
+    private void loadClientRevocations() {
+        for (ClientRevocation revocation: clientRevocationRepository.findAll())
+            clientRevocations.merge(revocation.getClientId(), revocation.getRevokedBefore(), Math::max);
+        long oldest = System.currentTimeMillis() - clientRetentionMillis;
+        clientRevocations.values().removeIf(revokedBefore -> revokedBefore <= oldest);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.AuthorizationServer.security;
+
+import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
+import com.example.AuthorizationServer.utility.ExpiringLruCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of user details keyed by username, used by CustomUserDetailsService to avoid loading users and their
+ * organization memberships from the database on every password and refresh grant.
+ *
+ * Entries are copied on the way in and out since Spring Security erases the password of user details after a
+ * successful authentication. UserService and OrganizationService invalidate entries on every write that changes what
+ * a cached entry holds. Invalidations made within a transaction are repeated once it commits, so that details loaded
+ * by a concurrent login before the commit do not outlive it.
+ */
+@Component
+public class UserDetailsCache {
+
+    private final ExpiringLruCache<String, CustomUserDetails> cache;
+
+    // Incremented on every invalidation so that details loaded before an invalidation are never cached after it
+    private final AtomicLong generation = new AtomicLong();
+
+    public UserDetailsCache(@Value("${authserver.user-details-cache.max-size:10000}") int maxSize,
+                            @Value("${authserver.user-details-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.cache = new ExpiringLruCache<>(maxSize, ttlSeconds * 1000);
+    }
+
+    /**
+     * Fetches the user details of a user.
+     *
+     * @param username the username of the user.
+     * @return a copy of the cached user details or null if the user is not cached.
+     */
+    public CustomUserDetails get(String username) {
+        CustomUserDetails details = cache.get(username);
+        return details == null ? null : copy(details);
+    }
+
+    /**
+     * Fetches the current cache generation. Should be read before loading user details that are to be cached.
+     *
+     * @return the cache generation.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Adds the user details of a user unless the cache has been invalidated since the details were loaded.
+     *
+     * @param details the user details.
+     * @param generation the cache generation read before the details were loaded.
+     */
+    public void put(CustomUserDetails details, long generation) {
+        CustomUserDetails copy = copy(details);
+        // Checked while holding the cache lock, which every invalidation also takes after incrementing the generation
+        synchronized (cache) {
+            if (this.generation.get() == generation)
+                cache.put(details.getUsername(), copy);
+        }
+    }
+
+    /**
+     * Removes the user details of a user.
+     *
+     * @param username the username of the user.
+     */
+    public void invalidate(String username) {
+        if (username == null)
+            return;
+        evict(username);
+        afterCommit(() -> evict(username));
+    }
+
+    /**
+     * Removes the user details of every user that is a member of an organization or of one of its sub organizations.
+     *
+     * @param organizationId the id of the organization.
+     */
+    public void invalidateOrganization(Long organizationId) {
+        String id = organizationId.toString();
+        evictIf(id);
+        afterCommit(() -> evictIf(id));
+    }
+
+    /**
+     * Removes all user details.
+     */
+    public void invalidateAll() {
+        evictAll();
+        afterCommit(this::evictAll);
+    }
+
+    private void evict(String username) {
+        synchronized (cache) {
+            generation.incrementAndGet();
+            cache.invalidate(username);
+        }
+    }
+
+    private void evictAll() {
+        synchronized (cache) {
+            generation.incrementAndGet();
+            cache.clear();
+        }
+    }
+
+    private void evictIf(String organizationId) {
+        synchronized (cache) {
+            generation.incrementAndGet();
+            cache.invalidateIf(details -> referencesOrganization(details, organizationId));
+        }
+    }
+
+    private static void afterCommit(Runnable invalidation) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                invalidation.run();
+            }
+        });
+    }
+
+    private static boolean referencesOrganization(CustomUserDetails details, String id) {
+        if (details.getOrganizations() == null)
+            return false;
+        for (OrganizationDTO o: details.getOrganizations()) {
+            if (id.equals(String.valueOf(o.getId())))
+                return true;
+            if (o.getPath() == null)
+                continue;
+            for (String pathId: o.getPath().split("\\.")) {
+                if (pathId.equals(id))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static CustomUserDetails copy(CustomUserDetails details) {
+        Set<OrganizationDTO> organizations = null;
+        Collection<OrganizationDTO> source = details.getOrganizations();
+        if (source != null) {
+            organizations = new HashSet<>();
+            for (OrganizationDTO o: source)
+                organizations.add(new OrganizationDTO(o.getId(), o.getName(), o.getPath(), o.getEnabled()));
+        }
+        CustomUserDetails copy = new CustomUserDetails(details.getUsername(), details.getPassword(),
+                details.getAuthorities(), details.getId(), organizations);
+        copy.setSecurityStamp(details.getSecurityStamp());
+        return copy;
+    }
+}
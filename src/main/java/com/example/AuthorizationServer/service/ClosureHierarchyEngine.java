@@ -0,0 +1,115 @@
+package com.example.AuthorizationServer.service;
+
+import com.example.AuthorizationServer.bo.entity.Organization;
+import com.example.AuthorizationServer.repository.OrganizationClosureRepository;
+import com.example.AuthorizationServer.repository.OrganizationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Hierarchy engine that answers queries from the organization_closure table, which holds a row for every ancestor and
+ * descendant pair along with their distance. A subtree is a range of the primary key and the ancestors of an
+ * organization a range of the descendant index, regardless of how the ids of the organizations are written.
+ *
+ * The table is kept current on every hierarchy change reported by OrganizationService. Since it is not maintained
+ * while the path engine is selected, it is rebuilt from the organization paths at startup if it does not cover every
+ * organization.
+ */
+@Component
+@ConditionalOnProperty(name = "authserver.organizations.hierarchy-engine", havingValue = "closure")
+public class ClosureHierarchyEngine implements OrganizationHierarchyEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClosureHierarchyEngine.class);
+
+    private final OrganizationClosureRepository closureRepository;
+
+    private final OrganizationRepository organizationRepository;
+
+    @Autowired
+    public ClosureHierarchyEngine(OrganizationClosureRepository closureRepository,
+                                  OrganizationRepository organizationRepository) {
+        this.closureRepository = closureRepository;
+        this.organizationRepository = organizationRepository;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Organization> findSubTree(Organization root) {
+        return closureRepository.findSubTree(root.getId());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Organization> findSubTree(Organization root, int maxDepth) {
+        return closureRepository.findSubTreeToDepth(root.getId(), maxDepth);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Organization> findAncestors(Organization organization) {
+        return closureRepository.findAncestors(organization.getId());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Moves the subtree of the organization, which is just the organization itself when it is new, below its parent.
+     */
+    @Override
+    public void organizationSaved(Organization organization) {
+        Long id = organization.getId();
+        closureRepository.insertSelf(id);
+        closureRepository.detachSubTree(id);
+        Long parentId = OrganizationHierarchyIndex.parentIdFromPath(id, organization.getPath());
+        if (!parentId.equals(id))
+            closureRepository.attachSubTree(id, parentId);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Links the whole subtree with one statement from the paths of its organizations, which also hold the ids of the
+     * existing ancestors of the root.
+     */
+    @Override
+    public void subTreeImported(Organization root) {
+        String path = root.getPath();
+        closureRepository.insertSubTreeFromPaths(path, path + ".%");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void organizationDeleted(Long id) {
+        closureRepository.deleteOrganization(id);
+    }
+
+    /**
+     * Rebuilds the closure table from the organization paths if it does not cover every organization.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void rebuildIfStale() {
+        long organizations = organizationRepository.count();
+        if (closureRepository.countOrganizations() == organizations)
+            return;
+        closureRepository.deleteAllLinks();
+        int links = closureRepository.insertAllFromPaths();
+        logger.info("Rebuilt organization closure table with {} links for {} organizations", links, organizations);
+    }
+}
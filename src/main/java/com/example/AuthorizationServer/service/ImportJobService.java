@@ -0,0 +1,305 @@
+package com.example.AuthorizationServer.service;
+
+import com.example.AuthorizationServer.bo.dto.ImportJobDTO;
+import com.example.AuthorizationServer.bo.dto.ImportReportDTO;
+import com.example.AuthorizationServer.bo.dto.UserExtendedDTO;
+import com.example.AuthorizationServer.bo.entity.ImportJob;
+import com.example.AuthorizationServer.repository.ImportJobRepository;
+import com.example.AuthorizationServer.utility.NamedThreadFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Service for running bulk user imports as asynchronous jobs. Jobs run on a dedicated, bounded worker pool and are
+ * committed chunk by chunk through UserImportService, so request threads are released as soon as a job is submitted.
+ * The status of every job is stored in the import_job table when it starts and finishes, and periodically while it
+ * runs, so that it can be polled through any node without sticky routing. Finished jobs are kept for a configurable
+ * retention period. A queued or running job whose status has not been written for ten flush intervals belongs to a
+ * node that stopped and is reported as failed.
+ */
+@Service
+public class ImportJobService implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImportJobService.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final int STALE_FLUSH_INTERVALS = 10;
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private final UserImportService userImportService;
+
+    private final ImportJobRepository importJobRepository;
+
+    private final ThreadPoolExecutor executor;
+
+    private final Duration retention;
+
+    private final long staleMillis;
+
+    // Queued and running jobs of this node, removed once their final status is stored
+    private final Map<String, RunningJob> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ImportJobService(UserImportService userImportService, ImportJobRepository importJobRepository,
+                            @Value("${authserver.import.job-threads:2}") int threads,
+                            @Value("${authserver.import.job-queue-capacity:20}") int queueCapacity,
+                            @Value("${authserver.import.job-retention-minutes:60}") long retentionMinutes,
+                            @Value("${authserver.import.job-status-flush-ms:2000}") long flushMillis) {
+        this.userImportService = userImportService;
+        this.importJobRepository = importJobRepository;
+        this.retention = Duration.ofMinutes(retentionMinutes);
+        this.staleMillis = flushMillis * STALE_FLUSH_INTERVALS;
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new NamedThreadFactory("user-import-"));
+    }
+
+    /**
+     * Submits an import of users from an uploaded csv file. The upload is copied to a temporary file since it is
+     * only available for the duration of the request.
+     *
+     * @param file the csv file.
+     * @param rootOrganizationId the id of the root organization that the users may be members of.
+     * @param owner the username of the admin submitting the job.
+     * @return the dto of the submitted job.
+     * @throws IOException if the upload could not be stored.
+     * @throws RejectedExecutionException if too many jobs are already waiting.
+     */
+    public ImportJobDTO submitCsvImport(MultipartFile file, Long rootOrganizationId, String owner) throws IOException {
+        Path tempFile = Files.createTempFile("user-import-", ".csv");
+        try {
+            file.transferTo(tempFile);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+
+        try {
+            return submit(owner, report -> {
+                try (Reader reader = Files.newBufferedReader(tempFile, StandardCharsets.UTF_8)) {
+                    userImportService.importUsersFromCsv(reader, rootOrganizationId, report);
+                } finally {
+                    Files.deleteIfExists(tempFile);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Submits an import of users from user dtos.
+     *
+     * @param userDTOS the user dtos of the users to import.
+     * @param rootOrganizationId the id of the root organization that the users may be members of.
+     * @param owner the username of the admin submitting the job.
+     * @return the dto of the submitted job.
+     * @throws RejectedExecutionException if too many jobs are already waiting.
+     */
+    public ImportJobDTO submitImport(List<UserExtendedDTO> userDTOS, Long rootOrganizationId, String owner) {
+        return submit(owner, report -> userImportService.importUsers(userDTOS, rootOrganizationId, report));
+    }
+
+    /**
+     * Fetches the status of a job.
+     *
+     * @param id the id of the job.
+     * @param owner the username of the admin asking for the job. Jobs are only visible to the admin who submitted
+     *              them.
+     * @return the dto of the job.
+     * @throws NoSuchElementException if there is no such job for the admin.
+     */
+    public ImportJobDTO getJob(String id, String owner) {
+        RunningJob running = jobs.get(id);
+        ImportJob job = running != null ? running.toEntity() : importJobRepository.findById(id).orElse(null);
+        if (job == null || !job.getOwner().equals(owner))
+            throw new NoSuchElementException();
+
+        boolean unfinished = job.getFinished() == null;
+        if (running == null && unfinished && job.getUpdated() < System.currentTimeMillis() - staleMillis) {
+            job.setStatus(Status.FAILED.name());
+            job.setMessage("Unexpected error. Import was interrupted.");
+        }
+        return toDto(job);
+    }
+
+    /**
+     * Stores the progress of the running jobs of this node and removes finished jobs past the retention period.
+     */
+    @Scheduled(initialDelayString = "${authserver.import.job-status-flush-ms:2000}",
+            fixedDelayString = "${authserver.import.job-status-flush-ms:2000}")
+    public void flush() {
+        try {
+            for (RunningJob job: jobs.values())
+                store(job);
+            importJobRepository.deleteFinishedBefore(Instant.now().minus(retention).toEpochMilli());
+        } catch (RuntimeException e) {
+            // Retried on the next flush
+            logger.warn("Storing import job status failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private ImportJobDTO submit(String owner, ImportTask task) {
+        RunningJob job = new RunningJob(UUID.randomUUID().toString(), owner);
+        store(job);
+        jobs.put(job.id, job);
+
+        try {
+            executor.execute(() -> run(job, task));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            importJobRepository.deleteById(job.id);
+            throw e;
+        }
+
+        logger.info("Import job {} submitted by {}", job.id, owner);
+        return toDto(job.toEntity());
+    }
+
+    private void run(RunningJob job, ImportTask task) {
+        job.start();
+        store(job);
+        try {
+            task.run(job.report);
+            job.finish(Status.COMPLETED, null);
+            logger.info("Import job {} completed", job.id);
+        } catch (IllegalArgumentException e) {
+            job.finish(Status.FAILED, e.getMessage());
+        } catch (Exception e) {
+            logger.error("Import job {} failed: {}", job.id, e.getMessage());
+            job.finish(Status.FAILED, "Unexpected error. Import could not be completed.");
+        }
+
+        // Kept locally until the final status is stored, the next flush retries otherwise
+        if (store(job))
+            jobs.remove(job.id);
+    }
+
+    private boolean store(RunningJob job) {
+        try {
+            // Serialized per job, so a flush can not overwrite a later status written by the worker
+            synchronized (job) {
+                importJobRepository.save(job.toEntity());
+            }
+            return true;
+        } catch (RuntimeException e) {
+            logger.warn("Storing status of import job {} failed: {}", job.id, e.getMessage());
+            return false;
+        }
+    }
+
+    private static ImportJobDTO toDto(ImportJob job) {
+        ImportJobDTO dto = new ImportJobDTO();
+        dto.setId(job.getId());
+        dto.setStatus(job.getStatus());
+        dto.setMessage(job.getMessage());
+        dto.setSubmitted(toInstant(job.getSubmitted()));
+        dto.setStarted(toInstant(job.getStarted()));
+        dto.setFinished(toInstant(job.getFinished()));
+
+        ImportReportDTO report;
+        try {
+            report = job.getReport() == null
+                    ? new ImportReportDTO() : OBJECT_MAPPER.readValue(job.getReport(), ImportReportDTO.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("Stored report of import job " + job.getId() + " is unreadable", e);
+        }
+        dto.setReport(report);
+
+        if (job.getStarted() != null) {
+            long end = job.getFinished() != null ? job.getFinished() : System.currentTimeMillis();
+            double seconds = Math.max(end - job.getStarted(), 1) / 1000.0;
+            dto.setRowsPerSecond(report.getProcessedRows() / seconds);
+        }
+        return dto;
+    }
+
+    private static Instant toInstant(Long epochMillis) {
+        return epochMillis == null ? null : Instant.ofEpochMilli(epochMillis);
+    }
+
+    /**
+     * The work of an import job, recording its progress in the job's report.
+     */
+    private interface ImportTask {
+        void run(ImportReportDTO report) throws Exception;
+    }
+
+    /**
+     * State of a single import job running on this node. The report is filled in by the worker thread while the
+     * remaining state is guarded by the job itself.
+     */
+    private static class RunningJob {
+        private final String id;
+        private final String owner;
+        private final ImportReportDTO report = new ImportReportDTO();
+        private final long submitted = System.currentTimeMillis();
+        private Status status = Status.QUEUED;
+        private String message;
+        private Long started;
+        private Long finished;
+
+        private RunningJob(String id, String owner) {
+            this.id = id;
+            this.owner = owner;
+        }
+
+        private synchronized void start() {
+            status = Status.RUNNING;
+            started = System.currentTimeMillis();
+        }
+
+        private synchronized void finish(Status status, String message) {
+            this.status = status;
+            this.message = message;
+            this.finished = System.currentTimeMillis();
+        }
+
+        private synchronized ImportJob toEntity() {
+            ImportJob job = new ImportJob();
+            job.setId(id);
+            job.setOwner(owner);
+            job.setStatus(status.name());
+            job.setMessage(message);
+            job.setSubmitted(submitted);
+            job.setStarted(started);
+            job.setFinished(finished);
+            job.setUpdated(System.currentTimeMillis());
+            try {
+                job.setReport(OBJECT_MAPPER.writeValueAsString(report.snapshot()));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Report of import job " + id + " could not be serialized", e);
+            }
+            return job;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.AuthorizationServer.service;
+
+import com.example.AuthorizationServer.bo.entity.Organization;
+
+import java.util.List;
+
+/**
+ * Answers subtree and ancestor queries of the organization hierarchy from the database. The engine is selected with
+ * the authserver.organizations.hierarchy-engine property: "path" (the default) queries the org_path column of
+ * organizations, "closure" queries a closure table of every ancestor and descendant pair. OrganizationService reports
+ * every hierarchy change to the engine so that engines with their own storage can keep it current.
+ */
+public interface OrganizationHierarchyEngine {
+
+    /**
+     * Finds an organization and all of its descendants.
+     *
+     * @param root the root organization of the subtree.
+     * @return the organizations of the subtree ordered by path, starting with the root.
+     */
+    List<Organization> findSubTree(Organization root);
+
+    /**
+     * Finds an organization and its descendants down to a given number of levels below it.
+     *
+     * @param root the root organization of the subtree.
+     * @param maxDepth the number of levels below the root to include, zero for only the root.
+     * @return the organizations of the subtree ordered by path, starting with the root.
+     */
+    List<Organization> findSubTree(Organization root, int maxDepth);
+
+    /**
+     * Finds the ancestors of an organization.
+     *
+     * @param organization the organization.
+     * @return the ancestors ordered from the root organization to the parent, empty for a root organization.
+     */
+    List<Organization> findAncestors(Organization organization);
+
+    /**
+     * Records that an organization has been created or has been given a new parent. The path of the organization must
+     * already be set.
+     *
+     * @param organization the organization as persisted.
+     */
+    void organizationSaved(Organization organization);
+
+    /**
+     * Records that a new subtree has been created at once, by a bulk import. The organizations of the subtree must
+     * already be flushed with their paths set.
+     *
+     * @param root the root organization of the new subtree.
+     */
+    void subTreeImported(Organization root);
+
+    /**
+     * Records that an organization has been deleted.
+     *
+     * @param id the id of the organization.
+     */
+    void organizationDeleted(Long id);
+}
@@ -0,0 +1,309 @@
+package com.example.AuthorizationServer.service;
+
+import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
+import com.example.AuthorizationServer.bo.entity.Organization;
+import com.example.AuthorizationServer.repository.DeletedOrganizationRepository;
+import com.example.AuthorizationServer.repository.OrganizationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of the organization hierarchy. Maps each organization id to the id of its nearest parent so that
+ * ancestry and root checks can be answered by walking parent links instead of querying the database and parsing
+ * organization paths.
+ *
+ * The index also keeps the name, path and enabled flag of every organization, which lets compact organization claims
+ * in access tokens be expanded without a database lookup.
+ *
+ * The index is loaded from the organization repository on first use. Writes made on this node are applied once their
+ * transaction commits, so a rolled back write never reaches the index. Writes made on other nodes are picked up by
+ * polling for organizations whose change time has moved since the previous poll, and for the tombstones of deleted
+ * organizations. Organizations missing from the index (e.g. created on another node since the last poll) are loaded
+ * on demand. The index therefore reflects committed writes on this node at once and writes on other nodes within one
+ * poll interval, the same bound SecurityStampRegistry gives for changed users, and is the source of organization
+ * hierarchy information for authorization decisions and for expanding organization claims alike.
+ *
+ * If polling fails for longer than tombstones are kept, deletes could be missed, so the index is reloaded in full.
+ */
+@Component
+public class OrganizationHierarchyIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrganizationHierarchyIndex.class);
+
+    private final OrganizationRepository organizationRepository;
+
+    private final DeletedOrganizationRepository deletedOrganizationRepository;
+
+    private final long tombstoneRetentionMillis;
+
+    private final long maxClockSkewMillis;
+
+    // Organization id -> parent organization id. Root organizations are mapped to themselves.
+    private final Map<Long, Long> parents = new ConcurrentHashMap<>();
+
+    // Organization id -> organization. Never handed out directly since dtos are mutable.
+    private final Map<Long, OrganizationDTO> organizations = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded = false;
+
+    // Organizations written at or after this time, minus the allowed clock skew, are fetched by the next poll
+    private volatile long pollFrom;
+
+    @Autowired
+    public OrganizationHierarchyIndex(OrganizationRepository organizationRepository,
+                                      DeletedOrganizationRepository deletedOrganizationRepository,
+                                      @Value("${authserver.organizations.index-tombstone-retention-seconds:900}")
+                                              long tombstoneRetentionSeconds,
+                                      @Value("${authserver.organizations.index-max-clock-skew-ms:5000}")
+                                              long maxClockSkewMillis) {
+        this.organizationRepository = organizationRepository;
+        this.deletedOrganizationRepository = deletedOrganizationRepository;
+        this.tombstoneRetentionMillis = tombstoneRetentionSeconds * 1000;
+        this.maxClockSkewMillis = maxClockSkewMillis;
+    }
+
+    /**
+     * Checks if an organization is a root organization.
+     *
+     * @param id the id of the organization.
+     * @return true if the organization exists and is a root organization otherwise false.
+     */
+    public boolean isRoot(Long id) {
+        Long parentId = getParentId(id);
+        return parentId != null && parentId.equals(id);
+    }
+
+    /**
+     * Fetches the id of the root organization that a given organization belongs to.
+     *
+     * @param id the id of the organization.
+     * @return the id of the root organization.
+     */
+    public Long getRootId(Long id) {
+        Long current = id;
+        // Depth can never exceed the number of indexed organizations, which also guards against corrupt cycles
+        for (int i = 0; i <= parents.size(); i++) {
+            Long parentId = getParentId(current);
+            if (parentId == null)
+                throw new NoSuchElementException();
+            if (parentId.equals(current))
+                return current;
+            current = parentId;
+        }
+        throw new IllegalStateException("Organization hierarchy contains a cycle at organization " + id + ".");
+    }
+
+    /**
+     * Checks if an organization is the same as, or a descendant of, another organization.
+     *
+     * @param childId the id of the child organization.
+     * @param ancestorId the id of the ancestor organization.
+     * @return true if the organization is the ancestor or one of its descendants otherwise false.
+     */
+    public boolean isDescendantOrSelf(Long childId, Long ancestorId) {
+        if (getParentId(ancestorId) == null)
+            throw new NoSuchElementException();
+
+        Long current = childId;
+        for (int i = 0; i <= parents.size(); i++) {
+            if (current.equals(ancestorId))
+                return true;
+            Long parentId = getParentId(current);
+            if (parentId == null)
+                throw new NoSuchElementException();
+            if (parentId.equals(current))
+                return false;
+            current = parentId;
+        }
+        throw new IllegalStateException("Organization hierarchy contains a cycle at organization " + childId + ".");
+    }
+
+    /**
+     * Fetches the id of the nearest parent of an organization.
+     *
+     * @param id the id of the organization.
+     * @return the id of the parent, the organization's own id if it is a root organization or null if the
+     * organization does not exist.
+     */
+    public Long getParentId(Long id) {
+        if (id == null)
+            return null;
+        ensureLoaded();
+        Long parentId = parents.get(id);
+        if (parentId == null) {
+            Optional<Organization> optionalOrg = organizationRepository.findById(id);
+            if (!optionalOrg.isPresent())
+                return null;
+            Organization o = optionalOrg.get();
+            // Read from the database, so there is nothing to wait for
+            store(new OrganizationDTO(o.getId(), o.getName(), o.getPath(), o.getEnabled()));
+            parentId = parents.get(id);
+        }
+        return parentId;
+    }
+
+    /**
+     * Fetches an organization.
+     *
+     * @param id the id of the organization.
+     * @return a copy of the organization or null if the organization does not exist.
+     */
+    public OrganizationDTO getOrganization(Long id) {
+        if (getParentId(id) == null)
+            return null;
+        OrganizationDTO o = organizations.get(id);
+        if (o == null)
+            return null;
+        return new OrganizationDTO(o.getId(), o.getName(), o.getPath(), o.getEnabled());
+    }
+
+    /**
+     * Adds or updates an organization in the index, once the current transaction commits if there is one.
+     *
+     * @param organization the organization as persisted.
+     */
+    public void put(Organization organization) {
+        if (organization.getId() == null)
+            return;
+        // Copied now, since the entity may change before the transaction commits
+        OrganizationDTO copy = new OrganizationDTO(organization.getId(), organization.getName(),
+                organization.getPath(), organization.getEnabled());
+        afterCommit(() -> store(copy));
+    }
+
+    /**
+     * Updates the index after an organization and its sub tree have been moved below a new parent. The parents of the
+     * organizations below it are unchanged, only their paths are rewritten.
+     *
+     * @param organization the moved organization as persisted.
+     * @param oldPath the path of the organization before the move.
+     */
+    public void move(Organization organization, String oldPath) {
+        OrganizationDTO copy = new OrganizationDTO(organization.getId(), organization.getName(),
+                organization.getPath(), organization.getEnabled());
+        afterCommit(() -> {
+            store(copy);
+            if (oldPath == null || oldPath.isEmpty())
+                return;
+
+            String prefix = oldPath + ".";
+            String newPath = copy.getPath();
+            organizations.replaceAll((id, o) -> o.getPath() == null || !o.getPath().startsWith(prefix) ? o :
+                    new OrganizationDTO(o.getId(), o.getName(), newPath + o.getPath().substring(oldPath.length()),
+                            o.getEnabled()));
+        });
+    }
+
+    /**
+     * Removes an organization from the index, once the current transaction commits if there is one.
+     *
+     * @param id the id of the organization.
+     */
+    public void remove(Long id) {
+        afterCommit(() -> {
+            parents.remove(id);
+            organizations.remove(id);
+        });
+    }
+
+    /**
+     * Fetches organizations written and deleted on any node since the previous poll and removes tombstones older than
+     * the retention. Does nothing until the index has been loaded.
+     */
+    @Scheduled(fixedDelayString = "${authserver.organizations.index-poll-interval-ms:1000}")
+    public void poll() {
+        if (!loaded)
+            return;
+        long started = System.currentTimeMillis();
+        if (started - pollFrom + maxClockSkewMillis > tombstoneRetentionMillis) {
+            logger.warn("Organization hierarchy index was not polled within the tombstone retention, reloading");
+            loaded = false;
+            return;
+        }
+
+        try {
+            long since = pollFrom - maxClockSkewMillis;
+            List<Organization> changed = organizationRepository.findChangedSince(since);
+            List<Long> deleted = deletedOrganizationRepository.findIdsDeletedSince(since);
+            // Not applied across a concurrent reload, which already covers the changes
+            synchronized (this) {
+                if (!loaded)
+                    return;
+                for (Organization o: changed)
+                    store(new OrganizationDTO(o.getId(), o.getName(), o.getPath(), o.getEnabled()));
+                for (Long id: deleted) {
+                    parents.remove(id);
+                    organizations.remove(id);
+                }
+                pollFrom = started;
+            }
+            deletedOrganizationRepository.deleteDeletedBefore(started - tombstoneRetentionMillis);
+        } catch (RuntimeException e) {
+            // Retried from the same point on the next poll
+            logger.warn("Polling organization changes failed: {}", e.getMessage());
+        }
+    }
+
+    private void store(OrganizationDTO organization) {
+        parents.put(organization.getId(), parentIdFromPath(organization.getId(), organization.getPath()));
+        organizations.put(organization.getId(), organization);
+    }
+
+    private static void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+
+    private void ensureLoaded() {
+        if (loaded)
+            return;
+        synchronized (this) {
+            if (loaded)
+                return;
+            long started = System.currentTimeMillis();
+            // Loaded before clearing, so that concurrent readers fall back to the database only briefly
+            Iterable<Organization> all = organizationRepository.findAll();
+            parents.clear();
+            organizations.clear();
+            for (Organization o: all) {
+                store(new OrganizationDTO(o.getId(), o.getName(), o.getPath(), o.getEnabled()));
+            }
+            pollFrom = started;
+            loaded = true;
+            logger.info("Loaded organization hierarchy index with {} organizations", parents.size());
+        }
+    }
+
+    /**
+     * Derives the parent id from an organization path, i.e. the second to last organization id in the path.
+     */
+    static Long parentIdFromPath(Long id, String path) {
+        if (path == null)
+            return id;
+        int end = path.lastIndexOf('.');
+        if (end < 0)
+            return id;
+        int start = path.lastIndexOf('.', end - 1);
+        return Long.valueOf(path.substring(start + 1, end));
+    }
+}
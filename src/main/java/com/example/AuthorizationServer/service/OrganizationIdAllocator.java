@@ -0,0 +1,34 @@
+package com.example.AuthorizationServer.service;
+
+import com.example.AuthorizationServer.bo.entity.Organization;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+/**
+ * Allocates organization ids ahead of saving, from the same pooled id_generator segment as the entity mapping, so
+ * that the paths of new organizations can be written before they are inserted. Ids come in blocks of the allocation
+ * size, so allocating ids for a large tree takes one id_generator round trip per block rather than per organization.
+ */
+@Component
+public class OrganizationIdAllocator {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Allocates an id for a new organization.
+     *
+     * @return the allocated id.
+     */
+    public Long allocate() {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        IdentifierGenerator generator = session.getFactory().getMetamodel().entityPersister(Organization.class)
+                .getIdentifierGenerator();
+        // The generator only looks at the organization for an already assigned id
+        return (Long) generator.generate(session, new Organization());
+    }
+}
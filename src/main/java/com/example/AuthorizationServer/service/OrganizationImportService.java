@@ -0,0 +1,269 @@
+package com.example.AuthorizationServer.service;
+
+import com.example.AuthorizationServer.bo.dto.OrganizationTreeNodeDTO;
+import com.example.AuthorizationServer.bo.entity.Organization;
+import com.example.AuthorizationServer.repository.OrganizationRepository;
+import com.example.AuthorizationServer.utility.CsvLineParser;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * Service for importing whole organization trees at once. Ids and paths are assigned in memory before anything is
+ * saved, so every organization is inserted once with its final path, and all inserts are JDBC batched within one
+ * transaction. An import either creates every organization or, if any organization is invalid, none of them.
+ */
+@Service
+@Transactional
+public class OrganizationImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrganizationImportService.class);
+
+    private static final List<String> CSV_HEADERS = Arrays.asList("name", "parent");
+
+    // Length of the org_path column
+    private static final int MAX_PATH_LENGTH = 255;
+
+    // Names per lookup of already existing organizations
+    private static final int NAME_LOOKUP_BATCH_SIZE = 1000;
+
+    private final OrganizationRepository organizationRepository;
+
+    private final OrganizationHierarchyIndex hierarchyIndex;
+
+    private final OrganizationHierarchyEngine hierarchyEngine;
+
+    private final OrganizationIdAllocator idAllocator;
+
+    private final int maxOrganizations;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public OrganizationImportService(OrganizationRepository organizationRepository,
+                                     OrganizationHierarchyIndex hierarchyIndex,
+                                     OrganizationHierarchyEngine hierarchyEngine, OrganizationIdAllocator idAllocator,
+                                     @Value("${authserver.import.max-organizations:20000}") int maxOrganizations) {
+        this.organizationRepository = organizationRepository;
+        this.hierarchyIndex = hierarchyIndex;
+        this.hierarchyEngine = hierarchyEngine;
+        this.idAllocator = idAllocator;
+        this.maxOrganizations = maxOrganizations;
+    }
+
+    /**
+     * Imports an organization tree. Ids and paths of the tree nodes are ignored and organizations without an enabled
+     * flag are enabled.
+     *
+     * @param tree the root node of the tree, with its sub organizations.
+     * @param parentId the id of the organization to import the tree below, or null to import it as a root organization.
+     * @return the imported tree.
+     * @throws IllegalArgumentException if the tree is too large, too deep or has missing or already used names.
+     * @throws NoSuchElementException if the parent organization does not exist.
+     */
+    public OrganizationTreeNodeDTO importTree(OrganizationTreeNodeDTO tree, Long parentId) {
+        return importTrees(Collections.singletonList(tree), parentId).get(0);
+    }
+
+    /**
+     * Imports organization trees from comma separated values. The first line is expected to hold the headers name and
+     * parent. The parent column holds the name of another organization in the file, or is empty for the root
+     * organizations of the trees. Rows may come in any order.
+     *
+     * @param reader the reader to read the comma separated values from.
+     * @param parentId the id of the organization to import the trees below, or null to import them as root
+     *                 organizations.
+     * @return the imported trees, in the order of their root organizations in the file.
+     * @throws IOException if reading fails.
+     * @throws IllegalArgumentException if the values have the wrong format, refer to unknown or cyclic parents or if the
+     * trees are too large, too deep or have already used names.
+     * @throws NoSuchElementException if the parent organization does not exist.
+     */
+    public List<OrganizationTreeNodeDTO> importTreesFromCsv(Reader reader, Long parentId) throws IOException {
+        BufferedReader br = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+
+        String line = br.readLine();
+        if (line == null || !CSV_HEADERS.equals(CsvLineParser.parse(line)))
+            throw new IllegalArgumentException("CSV file has wrong format.");
+
+        Map<String, OrganizationTreeNodeDTO> nodes = new LinkedHashMap<>();
+        Map<String, String> parentNames = new HashMap<>();
+        long row = 1;
+
+        while ((line = br.readLine()) != null) {
+            row++;
+            if (line.trim().isEmpty())
+                continue;
+
+            List<String> fields = CsvLineParser.parse(line);
+            if (fields.size() != CSV_HEADERS.size() || fields.get(0).isEmpty())
+                throw new IllegalArgumentException("Row " + row + " does not hold a name and a parent.");
+            if (nodes.size() >= maxOrganizations)
+                throw new IllegalArgumentException("At most " + maxOrganizations + " organizations can be imported at once.");
+
+            String name = fields.get(0);
+            if (nodes.containsKey(name))
+                throw new IllegalArgumentException("Organization " + name + " occurs more than once.");
+            OrganizationTreeNodeDTO node = new OrganizationTreeNodeDTO();
+            node.setName(name);
+            node.setEnabled(true);
+            nodes.put(name, node);
+            parentNames.put(name, fields.get(1));
+        }
+
+        List<OrganizationTreeNodeDTO> roots = new ArrayList<>();
+        for (OrganizationTreeNodeDTO node: nodes.values()) {
+            String parentName = parentNames.get(node.getName());
+            if (parentName.isEmpty()) {
+                roots.add(node);
+                continue;
+            }
+            OrganizationTreeNodeDTO parent = nodes.get(parentName);
+            if (parent == null)
+                throw new IllegalArgumentException("Parent " + parentName + " of organization " + node.getName() +
+                        " is not in the file.");
+            parent.addSubOrganization(node);
+        }
+
+        // Organizations whose parents form a cycle cannot be reached from any root
+        if (countNodes(roots) != nodes.size())
+            throw new IllegalArgumentException("Organization parents form a cycle.");
+
+        return importTrees(roots, parentId);
+    }
+
+    private List<OrganizationTreeNodeDTO> importTrees(List<OrganizationTreeNodeDTO> trees, Long parentId) {
+        int size = countNodes(trees);
+        if (size == 0)
+            throw new IllegalArgumentException("No organizations to import.");
+        if (size > maxOrganizations)
+            throw new IllegalArgumentException("At most " + maxOrganizations + " organizations can be imported at once.");
+        checkNames(trees);
+
+        // Same placement below a parent as when moving an organization, see OrganizationService
+        String parentPath = null;
+        if (parentId != null) {
+            Organization parent = organizationRepository.findById(parentId).orElseThrow(NoSuchElementException::new);
+            if (!parent.getPath().isEmpty())
+                parentPath = parent.getPath();
+        }
+
+        Session session = entityManager.unwrap(Session.class);
+        List<Organization> saved = new ArrayList<>(size);
+        List<Organization> importedRoots = new ArrayList<>(trees.size());
+        List<OrganizationTreeNodeDTO> imported = new ArrayList<>(trees.size());
+
+        // Depth first so that the path of every parent is known before its sub organizations
+        Deque<PendingNode> pending = new ArrayDeque<>();
+        for (int i = trees.size() - 1; i >= 0; i--)
+            pending.push(new PendingNode(trees.get(i), parentPath, null));
+
+        while (!pending.isEmpty()) {
+            PendingNode next = pending.pop();
+            Long id = idAllocator.allocate();
+            String path = next.parentPath == null ? id.toString() : next.parentPath + "." + id;
+            if (path.length() > MAX_PATH_LENGTH)
+                throw new IllegalArgumentException("Organization tree is too deep to import.");
+
+            Organization organization = new Organization();
+            organization.setId(id);
+            organization.setName(next.node.getName());
+            organization.setPath(path);
+            organization.setEnabled(next.node.getEnabled() == null || next.node.getEnabled());
+            // Saved through the session, since persist would take the preassigned id for a detached organization
+            session.save(organization);
+            saved.add(organization);
+
+            OrganizationTreeNodeDTO node = new OrganizationTreeNodeDTO(id, organization.getName(), path,
+                    organization.getEnabled(), new ArrayList<>());
+            if (next.parent == null) {
+                importedRoots.add(organization);
+                imported.add(node);
+            } else {
+                next.parent.addSubOrganization(node);
+                next.parent.setChildCount(next.parent.getChildCount() + 1);
+            }
+
+            List<OrganizationTreeNodeDTO> children = next.node.getSubOrganizations();
+            if (children != null) {
+                for (int i = children.size() - 1; i >= 0; i--)
+                    pending.push(new PendingNode(children.get(i), path, node));
+            }
+        }
+
+        session.flush();
+        for (Organization organization: saved)
+            hierarchyIndex.put(organization);
+        for (Organization root: importedRoots)
+            hierarchyEngine.subTreeImported(root);
+
+        logger.info("Imported {} organizations in {} trees", saved.size(), importedRoots.size());
+        return imported;
+    }
+
+    /**
+     * Checks that every organization has a name that is used neither elsewhere in the trees nor by an existing
+     * organization.
+     */
+    private void checkNames(List<OrganizationTreeNodeDTO> trees) {
+        Set<String> names = new HashSet<>();
+        Deque<OrganizationTreeNodeDTO> pending = new ArrayDeque<>(trees);
+        while (!pending.isEmpty()) {
+            OrganizationTreeNodeDTO node = pending.pop();
+            if (node.getName() == null || node.getName().trim().isEmpty())
+                throw new IllegalArgumentException("Organization name is missing.");
+            if (!names.add(node.getName()))
+                throw new IllegalArgumentException("Organization " + node.getName() + " occurs more than once.");
+            if (node.getSubOrganizations() != null)
+                pending.addAll(node.getSubOrganizations());
+        }
+
+        List<String> nameList = new ArrayList<>(names);
+        for (int from = 0; from < nameList.size(); from += NAME_LOOKUP_BATCH_SIZE) {
+            List<Organization> existing = organizationRepository.findByNameIn(
+                    nameList.subList(from, Math.min(nameList.size(), from + NAME_LOOKUP_BATCH_SIZE)));
+            if (!existing.isEmpty())
+                throw new IllegalArgumentException("Organization " + existing.get(0).getName() + " already exists.");
+        }
+    }
+
+    private static int countNodes(List<OrganizationTreeNodeDTO> trees) {
+        int count = 0;
+        Deque<OrganizationTreeNodeDTO> pending = new ArrayDeque<>(trees);
+        while (!pending.isEmpty()) {
+            OrganizationTreeNodeDTO node = pending.pop();
+            count++;
+            if (node.getSubOrganizations() != null)
+                pending.addAll(node.getSubOrganizations());
+        }
+        return count;
+    }
+
+    private static class PendingNode {
+
+        private final OrganizationTreeNodeDTO node;
+
+        private final String parentPath;
+
+        // The imported node of the parent, null for the roots of the trees
+        private final OrganizationTreeNodeDTO parent;
+
+        private PendingNode(OrganizationTreeNodeDTO node, String parentPath, OrganizationTreeNodeDTO parent) {
+            this.node = node;
+            this.parentPath = parentPath;
+            this.parent = parent;
+        }
+    }
+}
@@ -1,17 +1,28 @@
 package com.example.AuthorizationServer.service;
 
+import com.example.AuthorizationServer.bo.dto.CursorPageDTO;
 import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
 import com.example.AuthorizationServer.bo.dto.OrganizationTreeNodeDTO;
+import com.example.AuthorizationServer.bo.entity.DeletedOrganization;
 import com.example.AuthorizationServer.bo.entity.Organization;
 import com.example.AuthorizationServer.controller.UserController;
+import com.example.AuthorizationServer.repository.DeletedOrganizationRepository;
 import com.example.AuthorizationServer.repository.OrganizationRepository;
+import com.example.AuthorizationServer.repository.UserRepository;
+import com.example.AuthorizationServer.security.SecurityStampRegistry;
+import com.example.AuthorizationServer.security.UserDetailsCache;
+import com.example.AuthorizationServer.utility.CursorCodec;
 import com.example.AuthorizationServer.utility.MapperUtil;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import java.util.*;
 
 /**
@@ -25,14 +36,45 @@ public class OrganizationService {
 
     private static final Logger logger = LoggerFactory.getLogger(UserController.class);
 
+    // Number of user ids per security stamp update statement
+    private static final int STAMP_BATCH_SIZE = 1000;
+
     private final OrganizationRepository organizationRepository;
 
     private final MapperUtil mapperUtil;
 
+    private final OrganizationHierarchyIndex hierarchyIndex;
+
+    private final UserDetailsCache userDetailsCache;
+
+    private final UserRepository userRepository;
+
+    private final SecurityStampRegistry securityStampRegistry;
+
+    private final OrganizationHierarchyEngine hierarchyEngine;
+
+    private final OrganizationIdAllocator idAllocator;
+
+    private final DeletedOrganizationRepository deletedOrganizationRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     @Autowired
-    public OrganizationService(OrganizationRepository organizationRepository, MapperUtil mapperUtil) {
+    public OrganizationService(OrganizationRepository organizationRepository, MapperUtil mapperUtil,
+                               OrganizationHierarchyIndex hierarchyIndex, UserDetailsCache userDetailsCache,
+                               UserRepository userRepository, SecurityStampRegistry securityStampRegistry,
+                               OrganizationHierarchyEngine hierarchyEngine, OrganizationIdAllocator idAllocator,
+                               DeletedOrganizationRepository deletedOrganizationRepository) {
         this.organizationRepository = organizationRepository;
         this.mapperUtil = mapperUtil;
+        this.hierarchyIndex = hierarchyIndex;
+        this.hierarchyEngine = hierarchyEngine;
+        this.idAllocator = idAllocator;
+        this.userDetailsCache = userDetailsCache;
+        this.userRepository = userRepository;
+        this.securityStampRegistry = securityStampRegistry;
+        this.deletedOrganizationRepository = deletedOrganizationRepository;
     }
 
     /**
@@ -64,12 +106,8 @@ public class OrganizationService {
      * @return the organization dto representing the new organization.
      */
     public OrganizationDTO addOrganization(OrganizationDTO org) {
-        Organization returnedOrg = organizationRepository.save(mapperUtil.convertToEntity(org));
-        returnedOrg.setPath("");
-        Optional<Organization> optionalOrg = organizationRepository.findByName(returnedOrg.getName());
-        Organization orgInDb = optionalOrg.get();
-        orgInDb.setParent(orgInDb);
-        return mapperUtil.convertToDto(organizationRepository.save(orgInDb));
+        Organization savedOrg = this.createOrganization(org, null);
+        return mapperUtil.convertToDto(savedOrg);
     }
 
     /**
@@ -94,27 +132,41 @@ public class OrganizationService {
      */
     public OrganizationDTO addParentToOrganization(OrganizationDTO childDto, Long parentId) {
         Organization parent = this.getOrganizationEntityById(parentId);
-        Organization child = mapperUtil.convertToEntity(childDto);
-        Organization childInDb = organizationRepository.save(child);
-        return this.addParentToOrganization(childInDb, parent);
+        Organization savedChild = this.createOrganization(childDto, parent);
+        return mapperUtil.convertToDto(savedChild);
     }
 
     /**
-     * Sets an organization as the parent of another organization.
+     * Sets an organization as the parent of another organization, moving the whole sub tree of the child.
      *
      * @param child the intended child organization.
      * @param parent the intended parent organization.
      * @return the organization dto representing the updated child organization.
+     * @throws IllegalArgumentException if the parent is the child itself or one of its descendants.
      */
     public OrganizationDTO addParentToOrganization(Organization child, Organization parent) {
         Optional<Organization> optionalChild = organizationRepository.findByName(child.getName());
         Optional<Organization> optionalParent = organizationRepository.findByName(parent.getName());
         if (!optionalChild.isPresent() || !optionalParent.isPresent())
             throw new NoSuchElementException(); // ?
-        Organization childInDb = optionalChild.get();
-        Organization parentInDb = optionalParent.get();
-        childInDb.setParent(parentInDb);
-        return mapperUtil.convertToDto(organizationRepository.save(childInDb));
+        Long childId = optionalChild.get().getId();
+        this.moveOrganization(optionalChild.get(), optionalParent.get());
+        return mapperUtil.convertToDto(this.getOrganizationEntityById(childId));
+    }
+
+    /**
+     * Moves an organization and its whole sub tree below another organization. The paths of the sub tree are
+     * rewritten with a single update, so the cost does not grow with one round trip per organization.
+     *
+     * @param childId the id of the organization to move.
+     * @param parentId the id of the new parent organization.
+     * @return the number of moved organizations, the organization itself included.
+     * @throws IllegalArgumentException if the parent is the organization itself or one of its descendants.
+     */
+    public int moveOrganization(Long childId, Long parentId) {
+        Organization child = this.getOrganizationEntityById(childId);
+        Organization parent = this.getOrganizationEntityById(parentId);
+        return this.moveOrganization(child, parent);
     }
 
     /**
@@ -129,7 +181,7 @@ public class OrganizationService {
             throw new NoSuchElementException(); // ?
         Organization parentInDB = optionalParent.get();
 
-        List<Organization> orgs = organizationRepository.findByPathStartsWith(parentInDB.getPath());
+        List<Organization> orgs = hierarchyEngine.findSubTree(parentInDB);
         orgs.remove(parentInDB);
 
         List<OrganizationDTO> orgDtos = new ArrayList<>();
@@ -139,6 +191,21 @@ public class OrganizationService {
         return orgDtos;
     }
 
+    /**
+     * Fetches the ancestors of an organization.
+     *
+     * @param id the id of the organization.
+     * @return the ancestors ordered from the root organization to the parent.
+     */
+    public List<OrganizationDTO> getAncestorsOfOrganization(Long id) {
+        Organization organization = this.getOrganizationEntityById(id);
+        List<OrganizationDTO> orgDtos = new ArrayList<>();
+        for (Organization o: hierarchyEngine.findAncestors(organization)) {
+            orgDtos.add(mapperUtil.convertToDto(o));
+        }
+        return orgDtos;
+    }
+
     /**
      * Fetches all organizations.
      *
@@ -149,31 +216,57 @@ public class OrganizationService {
     }
 
     /**
-     * Checks if an organization is a child of another organization.
+     * Fetches a page of organizations ordered by path, starting after the organization encoded in the given cursor.
      *
-     * @param childId the id of the child organization.
-     * @param parentId the id of the parent organization.
-     * @return true if the organization is a child of the parent otherwise false.
+     * @param cursor the cursor returned with the previous page or null for the first page.
+     * @param limit the upper limit of how many organizations to retrieve.
+     * @param withTotal whether to include the exact total number of organizations.
+     * @return the page of organizations.
      */
-    public boolean isOrganizationChildOfRootParent(Long childId, Long parentId) {
-        Optional<Organization> optionalChild = organizationRepository.findById(childId);
-        if(!optionalChild.isPresent())
-            throw new NoSuchElementException();
-        Optional<Organization> optionalRoot = organizationRepository.findById(parentId);
-        if(!optionalRoot.isPresent())
-            throw new NoSuchElementException();
+    public CursorPageDTO<OrganizationDTO> getOrganizationsPage(String cursor, int limit, boolean withTotal) {
+        if (limit < 1)
+            throw new IllegalArgumentException("Limit must be at least one.");
+
+        String afterPath = "";
+        Long afterId = 0L;
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] keys = CursorCodec.decode(cursor, 2);
+            afterPath = keys[0];
+            try {
+                afterId = Long.valueOf(keys[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed cursor.");
+            }
+        }
 
-        Organization child = optionalChild.get();
-        Organization root = optionalRoot.get();
+        // Fetch one extra organization to find out whether there is a next page
+        List<Organization> orgs = organizationRepository.findAllAfter(afterPath, afterId, PageRequest.of(0, limit + 1));
 
-        String[] pathArray = child.getPath().split("\\.");
+        List<OrganizationDTO> orgDtos = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, orgs.size()); i++) {
+            orgDtos.add(mapperUtil.convertToDto(orgs.get(i)));
+        }
 
-        for (String s:pathArray) {
-            if(s.equals(root.getId().toString()))
-                return true;
+        String nextCursor = null;
+        if (orgs.size() > limit) {
+            OrganizationDTO last = orgDtos.get(orgDtos.size() - 1);
+            nextCursor = CursorCodec.encode(last.getPath(), last.getId().toString());
         }
 
-        return false;
+        Long total = withTotal ? organizationRepository.count() : null;
+
+        return new CursorPageDTO<>(orgDtos, nextCursor, total);
+    }
+
+    /**
+     * Checks if an organization is a child of another organization.
+     *
+     * @param childId the id of the child organization.
+     * @param parentId the id of the parent organization.
+     * @return true if the organization is a child of the parent otherwise false.
+     */
+    public boolean isOrganizationChildOfRootParent(Long childId, Long parentId) {
+        return hierarchyIndex.isDescendantOrSelf(childId, parentId);
     }
 
     /**
@@ -199,17 +292,7 @@ public class OrganizationService {
      * @return true if the organization is a root organization otherwise false.
      */
     public boolean isRootOrganization(Long id) {
-        Optional<Organization> optionalOrganization = organizationRepository.findById(id);
-        if(!optionalOrganization.isPresent())
-            return false;
-
-        Organization organization = optionalOrganization.get();
-        String[] pathArray = organization.getPath().split("\\.");
-
-        if(pathArray.length > 1)
-            return false;
-
-        return true;
+        return hierarchyIndex.isRoot(id);
     }
 
     /**
@@ -219,16 +302,17 @@ public class OrganizationService {
      * @return the root organization.
      */
     public OrganizationDTO getRootParentOfOrganization(Long id) {
-        Optional<Organization> optionalOrganization = organizationRepository.findById(id);
-        if(!optionalOrganization.isPresent())
-            throw new NoSuchElementException();
-        Organization organization = optionalOrganization.get();
-        String[] pathArray = organization.getPath().split("\\.");
-        Optional<Organization> optionalRootParent = organizationRepository.findById(Long.valueOf(pathArray[0]));
-        if(!optionalRootParent.isPresent())
-            throw new NoSuchElementException();
-        Organization rootParent = optionalRootParent.get();
-        return mapperUtil.convertToDto(rootParent);
+        return getOrganizationById(hierarchyIndex.getRootId(id));
+    }
+
+    /**
+     * Fetches the id of the root organization that a given organization belongs to without accessing the database.
+     *
+     * @param id the id of the organization.
+     * @return the id of the root organization.
+     */
+    public Long getRootParentIdOfOrganization(Long id) {
+        return hierarchyIndex.getRootId(id);
     }
 
     /**
@@ -238,49 +322,50 @@ public class OrganizationService {
      * @return the sub tree represented as a sorted list.
      */
     public List<OrganizationTreeNodeDTO> getOrganizationSubTree(Long id) {
+        return this.getOrganizationSubTree(id, null, false, Collections.emptySet());
+    }
 
-        List<Organization> organizations = organizationRepository.findByPathContainsOrderByPathAsc(id.toString());
-        List<OrganizationDTO> organizationDTOS = new ArrayList<>();
-
-        // Because of ascending sorting in list, the first item in organizations will be node with given id
-        String[] pathArray = organizations.get(0).getPath().split("\\.");
-
-        for (Organization o: organizations) {
-
-            OrganizationDTO dto = mapperUtil.convertToDto(o);
-            String[] orgPathArray = dto.getPath().split("\\.");
-
-            // Result of the "contains" query could possibly contain unwanted organization
-            if (pathArray.length > 1) {
-                // Path contains more than one entry so it does not start with the given id..
-                // ..therefore we need to trim the path so that it does
-
-                String path = o.getPath();
-
-                // Assume that the organization does not have the given id..
-                String match = "." + id + ".";
-                // ..but adjust match string if it does
-                if (o.getId().equals(id))
-                    match = "." + id;
-
-                int matchPosition = path.indexOf(match);
-                if (matchPosition > -1) {
-                    // Match found so organization belongs in sub tree
-                    String newPath = path.substring(matchPosition);
-                    dto.setPath(newPath.substring(1));
-                    organizationDTOS.add(dto);
-                }
-            } else {
-                // Path starts with given id..
-                // ..so organization belongs to sub tree if the root id matches the given id
-                if (orgPathArray[0].equals(id.toString()))
-                    organizationDTOS.add(dto);
-            }
-        }
-
-        List<OrganizationTreeNodeDTO> nodes = mapperUtil.convertToTreeNodeDtos(organizationDTOS);
+    /**
+     * Fetches the sub tree of organizations with a given organization as root, down to a given depth. Every node
+     * carries the number of its direct sub organizations, whether they are included or not, so that clients can tell
+     * which nodes can be expanded.
+     *
+     * @param id the id of the sub tree root organization.
+     * @param depth the number of levels below the root to include, or null for all levels.
+     * @param enabledOnly whether to leave out disabled organizations along with everything below them.
+     * @param expand the ids of organizations whose sub organizations are included regardless of the depth.
+     * @return the sub tree represented as a sorted list, empty if the root is left out.
+     */
+    public List<OrganizationTreeNodeDTO> getOrganizationSubTree(Long id, Integer depth, boolean enabledOnly,
+                                                                Collection<Long> expand) {
+        Organization root = this.getOrganizationEntityById(id);
+        // One level more than shown is needed for the child counts of the deepest shown level. Expanded organizations
+        // can be at any depth.
+        List<Organization> organizations = depth == null || !expand.isEmpty() ?
+                hierarchyEngine.findSubTree(root) : hierarchyEngine.findSubTree(root, depth + 1);
+
+        // Paths are trimmed so that they start with the given id, which makes it the root of the built tree
+        String rootPath = root.getPath() == null || root.getPath().isEmpty() ? id.toString() : root.getPath();
+        int trimmed = rootPath.length() - id.toString().length();
+
+        return buildTree(organizations, id, trimmed, depth, enabledOnly, expand);
+    }
 
-        return buildTree(nodes);
+    /**
+     * Fetches the direct sub organizations of an organization, each with the number of its own sub organizations.
+     *
+     * @param id the id of the organization.
+     * @param enabledOnly whether to leave out disabled organizations.
+     * @return the sub organizations without their sub trees, empty if the organization itself is left out.
+     */
+    public List<OrganizationTreeNodeDTO> getChildNodesOfOrganization(Long id, boolean enabledOnly) {
+        List<OrganizationTreeNodeDTO> tree = this.getOrganizationSubTree(id, 1, enabledOnly, Collections.emptySet());
+        if (tree.isEmpty())
+            return tree;
+        List<OrganizationTreeNodeDTO> children = tree.get(0).getSubOrganizations();
+        for (OrganizationTreeNodeDTO child: children)
+            child.setSubOrganizations(new ArrayList<>());
+        return children;
     }
 
     /**
@@ -289,10 +374,25 @@ public class OrganizationService {
      * @return the tree structures.
      */
     public List<OrganizationTreeNodeDTO> getFullOrganizationTree() {
-        List<OrganizationDTO> organizations = this.findAll();
-        List<OrganizationTreeNodeDTO> nodes = mapperUtil.convertToTreeNodeDtos(organizations);
+        return this.getFullOrganizationTree(null, false, Collections.emptySet());
+    }
+
+    /**
+     * Fetches the organization tree structures of all organizations currently in the system, down to a given depth.
+     * See getOrganizationSubTree for the options.
+     *
+     * @param depth the number of levels below the root organizations to include, or null for all levels.
+     * @param enabledOnly whether to leave out disabled organizations along with everything below them.
+     * @param expand the ids of organizations whose sub organizations are included regardless of the depth.
+     * @return the tree structures.
+     */
+    public List<OrganizationTreeNodeDTO> getFullOrganizationTree(Integer depth, boolean enabledOnly,
+                                                                 Collection<Long> expand) {
+        List<Organization> organizations = depth == null || !expand.isEmpty() ?
+                organizationRepository.findAllByOrderByPathAsc() :
+                organizationRepository.findAllToDepthOrderByPathAsc(depth + 1);
 
-        return buildTree(nodes);
+        return buildTree(organizations, null, 0, depth, enabledOnly, expand);
     }
 
     /**
@@ -307,9 +407,15 @@ public class OrganizationService {
         if (!optionalOrg.isPresent())
             throw new NoSuchElementException(); // ?
         Organization updatedOrganization = optionalOrg.get();
+        // Tokens of members carry the enabled flag, so enabling or disabling invalidates them
+        if (!Objects.equals(updatedOrganization.getEnabled(), organizationDTO.getEnabled()))
+            bumpSecurityStampsOfMembers(updatedOrganization);
         updatedOrganization.setName(organizationDTO.getName());
         updatedOrganization.setEnabled(organizationDTO.getEnabled());
-        return mapperUtil.convertToDto(organizationRepository.save(updatedOrganization));
+        Organization savedOrg = organizationRepository.save(updatedOrganization);
+        hierarchyIndex.put(savedOrg);
+        userDetailsCache.invalidateOrganization(id);
+        return mapperUtil.convertToDto(savedOrg);
     }
 
     /**
@@ -321,7 +427,13 @@ public class OrganizationService {
         Optional<Organization> optionalOrg = organizationRepository.findById(id);
         if (!optionalOrg.isPresent())
             throw new NoSuchElementException();
+        bumpSecurityStampsOfMembers(optionalOrg.get());
         organizationRepository.deleteById(id);
+        // Lets the other nodes remove the organization from their hierarchy index
+        deletedOrganizationRepository.save(new DeletedOrganization(id, System.currentTimeMillis()));
+        hierarchyIndex.remove(id);
+        hierarchyEngine.organizationDeleted(id);
+        userDetailsCache.invalidateOrganization(id);
     }
 
     /**
@@ -339,6 +451,83 @@ public class OrganizationService {
         return orgDtos;
     }
 
+    /**
+     * Moves the security stamps of every user that is a member of an organization or of one of its sub organizations
+     * forward, so that tokens issued to them before the change are no longer accepted.
+     */
+    private void bumpSecurityStampsOfMembers(Organization organization) {
+        String path = organization.getPath() == null || organization.getPath().isEmpty()
+                ? organization.getId().toString() : organization.getPath();
+        List<Long> userIds = userRepository.findIdsInOrganizationTree(path);
+        long now = System.currentTimeMillis();
+        for (int from = 0; from < userIds.size(); from += STAMP_BATCH_SIZE) {
+            List<Long> batch = userIds.subList(from, Math.min(from + STAMP_BATCH_SIZE, userIds.size()));
+            userRepository.bumpSecurityStamps(batch, now);
+        }
+        securityStampRegistry.record(userIds, now);
+    }
+
+    /**
+     * Creates an organization with its id allocated and its path computed up front, so that it is written with a
+     * single insert instead of being saved, read back by name and saved again with its path.
+     *
+     * @param org the organization dto of the organization. Its id and path are ignored.
+     * @param parent the parent organization, or null for a root organization.
+     * @return the new organization.
+     */
+    private Organization createOrganization(OrganizationDTO org, Organization parent) {
+        Organization organization = new Organization(idAllocator.allocate(), org.getName(), parent);
+        if (org.getEnabled() != null)
+            organization.setEnabled(org.getEnabled());
+        // Saved through the session, since persist would take the preassigned id for a detached organization
+        entityManager.unwrap(Session.class).save(organization);
+        hierarchyIndex.put(organization);
+        hierarchyEngine.organizationSaved(organization);
+        return organization;
+    }
+
+    /**
+     * Moves an organization and its sub tree below a new parent. Cycles are rejected using the in-memory hierarchy
+     * index before anything is written.
+     */
+    private int moveOrganization(Organization child, Organization parent) {
+        Long childId = child.getId();
+        String oldPath = child.getPath();
+        String parentPath = pathOf(parent);
+        // The index may lag other nodes, so the paths just loaded from the database are checked as well
+        String childPath = pathOf(child);
+        boolean belowItself = parentPath.equals(childPath) || parentPath.startsWith(childPath + ".");
+        if (belowItself || hierarchyIndex.isDescendantOrSelf(parent.getId(), childId))
+            throw new IllegalArgumentException("An organization cannot be moved below itself or its descendants.");
+
+        String newPath = parentPath + "." + childId;
+
+        // Tokens of members below the organization carry the old paths and roots. Found by the old path, so before
+        // the paths are rewritten.
+        bumpSecurityStampsOfMembers(child);
+
+        int moved;
+        long now = System.currentTimeMillis();
+        if (oldPath == null || oldPath.isEmpty()) {
+            // Its own root without a stored path, so only the organizations below it carry its id as path prefix
+            child.setPath(newPath);
+            organizationRepository.save(child);
+            moved = 1 + organizationRepository.replacePathPrefix(childPath, childPath + ".%", newPath,
+                    childPath.length() + 1, now);
+        } else {
+            moved = organizationRepository.replacePathPrefix(oldPath, oldPath + ".%", newPath, oldPath.length() + 1,
+                    now);
+        }
+
+        Organization movedChild = this.getOrganizationEntityById(childId);
+        hierarchyIndex.move(movedChild, childPath);
+        hierarchyEngine.organizationSaved(movedChild);
+        // Also evicts the members of the organizations below it, whose paths include the id
+        userDetailsCache.invalidateOrganization(childId);
+        logger.info("Moved {} organizations below organization {}", moved, parent.getId());
+        return moved;
+    }
+
     /**
      * Fetches an organization from id.
      *
@@ -356,31 +545,67 @@ public class OrganizationService {
     }
 
     /**
-     * Builds organization tree structures consisting of linked organization tree nodes.
+     * Fetches the path of an organization, where organizations without a path are their own roots.
+     */
+    private static String pathOf(Organization organization) {
+        String path = organization.getPath();
+        return path == null || path.isEmpty() ? organization.getId().toString() : path;
+    }
+
+    /**
+     * Builds organization tree structures in a single pass over organizations ordered by path, in which every parent
+     * comes before its sub organizations. Organizations below a left out organization are skipped after a single
+     * lookup of their parent.
      *
-     * @param nodes the organization tree node dtos to build the tree structures from.
+     * @param organizations the organizations ordered by path.
+     * @param rootId the id of the root of the single tree to build, or null to build a tree for every root organization.
+     * @param trimmed the number of leading path characters to leave out of the paths of the nodes below the root.
+     * @param depth the number of levels below the roots to include, or null for all levels.
+     * @param enabledOnly whether to leave out disabled organizations along with everything below them.
+     * @param expand the ids of organizations whose sub organizations are included regardless of the depth.
      * @return the tree structures.
      */
-    private static List<OrganizationTreeNodeDTO> buildTree(List<OrganizationTreeNodeDTO> nodes) {
-
-        HashMap<String, OrganizationTreeNodeDTO> map = new HashMap<>();
-
-        for (OrganizationTreeNodeDTO n: nodes) {
-            map.put(n.getId().toString(), n);
-        }
+    private static List<OrganizationTreeNodeDTO> buildTree(List<Organization> organizations, Long rootId, int trimmed,
+                                                           Integer depth, boolean enabledOnly,
+                                                           Collection<Long> expand) {
+        Set<Long> expanded = expand instanceof Set ? (Set<Long>) expand : new HashSet<>(expand);
+        // Included nodes and their depth below the root of their tree
+        Map<Long, OrganizationTreeNodeDTO> included = new HashMap<>();
+        Map<Long, Integer> depths = new HashMap<>();
 
         List<OrganizationTreeNodeDTO> tree = new ArrayList<>();
 
-        for (OrganizationTreeNodeDTO n: nodes) {
-            String[] path = n.getPath().split("\\.");
-            if (path.length == 1) {
-                tree.add(n);
-            } else {
-                // find nearest parent, i.e. the second to last organization id in the path
-                OrganizationTreeNodeDTO parent = map.get(path[path.length - 2]);
-                // add self as child
-                parent.addSubOrganization(n);
+        for (Organization o: organizations) {
+            boolean shown = !enabledOnly || Boolean.TRUE.equals(o.getEnabled());
+            Long parentId = OrganizationHierarchyIndex.parentIdFromPath(o.getId(), o.getPath());
+            boolean root = rootId == null ? parentId.equals(o.getId()) : o.getId().equals(rootId);
+
+            if (root) {
+                if (shown) {
+                    String path = rootId == null ? o.getPath() : rootId.toString();
+                    OrganizationTreeNodeDTO node = new OrganizationTreeNodeDTO(o.getId(), o.getName(), path,
+                            o.getEnabled(), new ArrayList<>());
+                    included.put(o.getId(), node);
+                    depths.put(o.getId(), 0);
+                    tree.add(node);
+                }
+                continue;
             }
+
+            OrganizationTreeNodeDTO parent = included.get(parentId);
+            if (parent == null || !shown)
+                continue;
+            parent.setChildCount(parent.getChildCount() + 1);
+
+            int parentDepth = depths.get(parentId);
+            if (depth != null && parentDepth >= depth && !expanded.contains(parentId))
+                continue;
+
+            OrganizationTreeNodeDTO node = new OrganizationTreeNodeDTO(o.getId(), o.getName(),
+                    o.getPath().substring(trimmed), o.getEnabled(), new ArrayList<>());
+            parent.addSubOrganization(node);
+            included.put(o.getId(), node);
+            depths.put(o.getId(), parentDepth + 1);
         }
 
         return tree;
@@ -0,0 +1,105 @@
+package com.example.AuthorizationServer.service;
+
+import com.example.AuthorizationServer.bo.entity.Organization;
+import com.example.AuthorizationServer.repository.OrganizationRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Hierarchy engine that answers queries from the materialized org_path column of organizations. Subtrees are found
+ * with an indexed prefix match on the path of the root, and ancestors by the ids listed in the path of the
+ * organization. Needs no storage of its own.
+ */
+@Component
+@ConditionalOnProperty(name = "authserver.organizations.hierarchy-engine", havingValue = "path", matchIfMissing = true)
+public class PathHierarchyEngine implements OrganizationHierarchyEngine {
+
+    private final OrganizationRepository organizationRepository;
+
+    @Autowired
+    public PathHierarchyEngine(OrganizationRepository organizationRepository) {
+        this.organizationRepository = organizationRepository;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Organization> findSubTree(Organization root) {
+        String path = pathOf(root);
+        // Matches descendants by whole path segments, so that 1.1 does not match 1.11
+        return organizationRepository.findSubTreeByPath(path, path + ".%");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Organization> findSubTree(Organization root, int maxDepth) {
+        String path = pathOf(root);
+        int separators = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '.')
+                separators++;
+        }
+        return organizationRepository.findSubTreeByPathToDepth(path, path + ".%", separators + maxDepth);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Organization> findAncestors(Organization organization) {
+        String[] ids = pathOf(organization).split("\\.");
+        if (ids.length < 2)
+            return new ArrayList<>();
+
+        List<Long> ancestorIds = new ArrayList<>(ids.length - 1);
+        for (int i = 0; i < ids.length - 1; i++)
+            ancestorIds.add(Long.valueOf(ids[i]));
+        Map<Long, Organization> found = new HashMap<>();
+        for (Organization o: organizationRepository.findByIdIn(ancestorIds))
+            found.put(o.getId(), o);
+
+        List<Organization> ancestors = new ArrayList<>(ancestorIds.size());
+        for (Long id: ancestorIds) {
+            // Deleted ancestors remain in the paths of their descendants
+            Organization ancestor = found.get(id);
+            if (ancestor != null)
+                ancestors.add(ancestor);
+        }
+        return ancestors;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void organizationSaved(Organization organization) {
+        // The path is stored with the organization
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void subTreeImported(Organization root) {
+        // The paths are stored with the organizations
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void organizationDeleted(Long id) {
+        // The path is stored with the organization
+    }
+
+    private static String pathOf(Organization organization) {
+        String path = organization.getPath();
+        return path == null || path.isEmpty() ? organization.getId().toString() : path;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.AuthorizationServer.service;
+
+import com.example.AuthorizationServer.security.CachingJwtTokenStore;
+import com.example.AuthorizationServer.utility.NamedThreadFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.ClientRegistrationException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Service for introspecting many access tokens at once. Each token is validated and converted the same way as by
+ * /oauth/check_token, through the CachingJwtTokenStore and the CustomTokenConverter, but tokens that are invalid,
+ * expired or revoked are answered with an inactive status instead of failing the whole request.
+ *
+ * Large batches are split into chunks that are validated in parallel on a bounded executor. The request thread
+ * validates the first chunk itself, and chunks that do not fit in the queue are also validated on the request thread,
+ * so a busy executor slows a batch down instead of rejecting it.
+ */
+@Service
+public class TokenIntrospectionService implements DisposableBean {
+
+    public static final String ACTIVE = "active";
+
+    private static final Map<String, Object> INACTIVE = Collections.singletonMap(ACTIVE, false);
+
+    // Cached tokens take microseconds to validate, so smaller chunks cost more in hand-off than they gain
+    private static final int MIN_CHUNK_SIZE = 32;
+
+    private final CachingJwtTokenStore tokenStore;
+
+    private final JwtAccessTokenConverter accessTokenConverter;
+
+    private final ClientDetailsService clientDetailsService;
+
+    private final ThreadPoolExecutor executor;
+
+    private final int maxBatchSize;
+
+    @Autowired
+    public TokenIntrospectionService(CachingJwtTokenStore tokenStore, JwtAccessTokenConverter accessTokenConverter,
+                                     ClientDetailsService clientDetailsService,
+                                     @Value("${authserver.introspection.threads:0}") int threads,
+                                     @Value("${authserver.introspection.queue-capacity:100}") int queueCapacity,
+                                     @Value("${authserver.introspection.max-batch-size:1000}") int maxBatchSize) {
+        this.tokenStore = tokenStore;
+        this.accessTokenConverter = accessTokenConverter;
+        this.clientDetailsService = clientDetailsService;
+        this.maxBatchSize = maxBatchSize;
+
+        // Default to one thread per available core
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new NamedThreadFactory("token-introspection-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Fetches the largest number of tokens accepted in one batch.
+     *
+     * @return the maximum batch size.
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Introspects a batch of access tokens.
+     *
+     * @param tokenValues the encoded tokens.
+     * @return the claims of each token with active set to true, or only active set to false for tokens that are not
+     * valid, in the same order as the tokens.
+     * @throws IllegalArgumentException if the batch is larger than the maximum batch size.
+     */
+    public List<Map<String, ?>> introspect(List<String> tokenValues) {
+        if (tokenValues.size() > maxBatchSize)
+            throw new IllegalArgumentException("At most " + maxBatchSize + " tokens can be introspected at once.");
+
+        int size = tokenValues.size();
+        Map<String, ?>[] results = newResults(size);
+        // One chunk per executor thread plus one for the request thread
+        int workers = executor.getMaximumPoolSize() + 1;
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (size + workers - 1) / workers);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = chunkSize; from < size; from += chunkSize) {
+            int start = from;
+            int end = Math.min(size, from + chunkSize);
+            futures.add(executor.submit(() -> introspect(tokenValues, results, start, end)));
+        }
+        introspect(tokenValues, results, 0, Math.min(size, chunkSize));
+
+        for (Future<?> future: futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(false));
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while introspecting tokens.", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new IllegalStateException("Token introspection failed.", e.getCause());
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void introspect(List<String> tokenValues, Map<String, ?>[] results, int start, int end) {
+        for (int i = start; i < end; i++)
+            results[i] = introspect(tokenValues.get(i));
+    }
+
+    /**
+     * Validates a token like DefaultTokenServices.loadAuthentication and converts it like CheckTokenEndpoint.
+     */
+    private Map<String, ?> introspect(String tokenValue) {
+        if (tokenValue == null || tokenValue.isEmpty())
+            return INACTIVE;
+        try {
+            OAuth2AccessToken token = tokenStore.readAccessToken(tokenValue);
+            if (token.isExpired())
+                return INACTIVE;
+            OAuth2Authentication authentication = tokenStore.readAuthentication(tokenValue);
+            clientDetailsService.loadClientByClientId(authentication.getOAuth2Request().getClientId());
+
+            Map<String, Object> response = new LinkedHashMap<>(accessTokenConverter.convertAccessToken(token,
+                    authentication));
+            response.put(ACTIVE, true);
+            return response;
+        } catch (InvalidTokenException | ClientRegistrationException e) {
+            return INACTIVE;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, ?>[] newResults(int size) {
+        return (Map<String, ?>[]) new Map<?, ?>[size];
+    }
+}
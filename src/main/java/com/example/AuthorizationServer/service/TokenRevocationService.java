@@ -0,0 +1,103 @@
+package com.example.AuthorizationServer.service;
+
+import com.example.AuthorizationServer.bo.entity.ClientRevocation;
+import com.example.AuthorizationServer.bo.entity.RevokedToken;
+import com.example.AuthorizationServer.repository.ClientRevocationRepository;
+import com.example.AuthorizationServer.repository.RevokedTokenRepository;
+import com.example.AuthorizationServer.security.CachingJwtTokenStore;
+import com.example.AuthorizationServer.security.TokenRevocationList;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.ClientRegistrationException;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Service for revoking issued tokens before they expire, either a single access or refresh token, every token of a
+ * user or every token of a client. See TokenRevocationList.
+ */
+@Service
+@Transactional
+public class TokenRevocationService {
+
+    private final CachingJwtTokenStore tokenStore;
+
+    private final RevokedTokenRepository revokedTokenRepository;
+
+    private final ClientRevocationRepository clientRevocationRepository;
+
+    private final TokenRevocationList tokenRevocationList;
+
+    private final UserService userService;
+
+    private final ClientDetailsService clientDetailsService;
+
+    private final long clientRetentionMillis;
+
+    @Autowired
+    public TokenRevocationService(CachingJwtTokenStore tokenStore, RevokedTokenRepository revokedTokenRepository,
+                                  ClientRevocationRepository clientRevocationRepository,
+                                  TokenRevocationList tokenRevocationList, UserService userService,
+                                  ClientDetailsService clientDetailsService,
+                                  @Value("${authserver.revocation.client-retention-seconds:900}") long retentionSeconds) {
+        this.tokenStore = tokenStore;
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.clientRevocationRepository = clientRevocationRepository;
+        this.tokenRevocationList = tokenRevocationList;
+        this.userService = userService;
+        this.clientDetailsService = clientDetailsService;
+        this.clientRetentionMillis = retentionSeconds * 1000;
+    }
+
+    /**
+     * Revokes an access or refresh token.
+     *
+     * @param tokenValue the encoded token.
+     */
+    public void revokeToken(String tokenValue) {
+        Map<String, Object> claims = tokenStore.readClaims(tokenValue);
+        Object jti = claims.get(AccessTokenConverter.JTI);
+        if (!(jti instanceof String))
+            throw new InvalidTokenException("Token has no jti");
+
+        long now = System.currentTimeMillis();
+        Object exp = claims.get(AccessTokenConverter.EXP);
+        // Tokens without expiry are kept as long as client revocations
+        long expiresAt = exp instanceof Number ? ((Number) exp).longValue() * 1000 : now + clientRetentionMillis;
+
+        revokedTokenRepository.save(new RevokedToken((String) jti, expiresAt, now));
+        tokenRevocationList.record((String) jti, expiresAt);
+    }
+
+    /**
+     * Revokes every token issued to a user so far.
+     *
+     * @param userId the id of the user.
+     */
+    public void revokeUserTokens(Long userId) {
+        userService.revokeTokens(userId);
+    }
+
+    /**
+     * Revokes every token issued to a client so far.
+     *
+     * @param clientId the id of the client.
+     */
+    public void revokeClientTokens(String clientId) {
+        try {
+            clientDetailsService.loadClientByClientId(clientId);
+        } catch (ClientRegistrationException e) {
+            throw new NoSuchElementException();
+        }
+
+        long now = System.currentTimeMillis();
+        clientRevocationRepository.save(new ClientRevocation(clientId, now));
+        tokenRevocationList.recordClient(clientId, now);
+    }
+}
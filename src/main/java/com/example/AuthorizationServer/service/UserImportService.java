@@ -0,0 +1,320 @@
+package com.example.AuthorizationServer.service;
+
+import com.example.AuthorizationServer.bo.dto.ImportReportDTO;
+import com.example.AuthorizationServer.bo.dto.ImportRowErrorDTO;
+import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
+import com.example.AuthorizationServer.bo.dto.UserExtendedDTO;
+import com.example.AuthorizationServer.repository.UserRepository;
+import com.example.AuthorizationServer.utility.CsvLineParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * Service for importing users in bulk. Input is streamed and persisted in fixed-size chunks, each in its own
+ * transaction, so that memory use stays flat regardless of the size of the input. Invalid rows are reported
+ * individually instead of aborting the whole import.
+ *
+ * Note: This service is deliberately not transactional. Every chunk is committed through UserService.
+ */
+@Service
+public class UserImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserImportService.class);
+
+    private static final List<String> CSV_HEADERS = Arrays.asList("firstname", "lastname", "username", "password",
+            "enabled", "organizations");
+
+    private final UserService userService;
+
+    private final UserRepository userRepository;
+
+    private final OrganizationService orgService;
+
+    private final int chunkSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public UserImportService(UserService userService, UserRepository userRepository, OrganizationService orgService,
+                             @Value("${authserver.import.chunk-size:500}") int chunkSize) {
+        this.userService = userService;
+        this.userRepository = userRepository;
+        this.orgService = orgService;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Imports users with user role from comma separated values. The first line is expected to hold the headers
+     * firstname, lastname, username, password, enabled and organizations. All columns from the organizations column
+     * onwards are expected to be names of existing organizations within the given root organization.
+     *
+     * @param reader the reader to stream the comma separated values from.
+     * @param rootOrganizationId the id of the root organization that the users may be members of.
+     * @return the report of the import.
+     * @throws IOException if reading fails.
+     * @throws IllegalArgumentException if the headers do not match the expected format.
+     */
+    public ImportReportDTO importUsersFromCsv(Reader reader, Long rootOrganizationId) throws IOException {
+        ImportReportDTO report = new ImportReportDTO();
+        importUsersFromCsv(reader, rootOrganizationId, report);
+        return report;
+    }
+
+    /**
+     * Imports users with user role from comma separated values, recording progress in the given report as chunks are
+     * committed.
+     *
+     * @param reader the reader to stream the comma separated values from.
+     * @param rootOrganizationId the id of the root organization that the users may be members of.
+     * @param report the report to record the outcome of each row in.
+     * @throws IOException if reading fails.
+     * @throws IllegalArgumentException if the headers do not match the expected format.
+     * @see #importUsersFromCsv(Reader, Long)
+     */
+    public void importUsersFromCsv(Reader reader, Long rootOrganizationId, ImportReportDTO report) throws IOException {
+        BufferedReader br = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+
+        String line = br.readLine();
+        if (line == null || !CSV_HEADERS.equals(CsvLineParser.parse(line)))
+            throw new IllegalArgumentException("CSV file has wrong format.");
+
+        Map<String, OrganizationDTO> organizationsByName = new HashMap<>();
+        List<ImportRow> chunk = new ArrayList<>(chunkSize);
+        long row = 1;
+
+        while ((line = br.readLine()) != null) {
+            row++;
+            if (line.trim().isEmpty())
+                continue;
+
+            List<String> fields;
+            try {
+                fields = CsvLineParser.parse(line);
+            } catch (IllegalArgumentException e) {
+                report.addError(new ImportRowErrorDTO(row, null, e.getMessage()));
+                continue;
+            }
+
+            try {
+                chunk.add(new ImportRow(row, parseUser(fields, rootOrganizationId, organizationsByName)));
+            } catch (IllegalArgumentException e) {
+                String username = fields.size() > 2 ? fields.get(2) : null;
+                report.addError(new ImportRowErrorDTO(row, username, e.getMessage()));
+                continue;
+            }
+
+            if (chunk.size() >= chunkSize) {
+                persistChunk(chunk, report);
+                chunk.clear();
+            }
+        }
+
+        if (!chunk.isEmpty())
+            persistChunk(chunk, report);
+
+        logger.info("Imported {} of {} users ({} rejected)", report.getImportedRows(), report.getProcessedRows(),
+                report.getFailedRows());
+    }
+
+    /**
+     * Imports users with user role from already parsed user dtos, recording progress in the given report as chunks
+     * are committed. Rows are numbered by their position in the list, starting at one.
+     *
+     * @param userDTOS the user dtos of the users to import.
+     * @param rootOrganizationId the id of the root organization that the users may be members of.
+     * @param report the report to record the outcome of each row in.
+     */
+    public void importUsers(List<UserExtendedDTO> userDTOS, Long rootOrganizationId, ImportReportDTO report) {
+        List<ImportRow> chunk = new ArrayList<>(chunkSize);
+        long row = 0;
+
+        for (UserExtendedDTO userDTO: userDTOS) {
+            row++;
+            try {
+                validateUser(userDTO);
+                if (userDTO.getEnabled() == null)
+                    userDTO.setEnabled(true);
+                if (userDTO.getOrganizations() == null)
+                    userDTO.setOrganizations(new HashSet<>());
+                for (OrganizationDTO o: userDTO.getOrganizations()) {
+                    checkOrganization(o, rootOrganizationId, String.valueOf(o.getId()));
+                }
+            } catch (IllegalArgumentException | NoSuchElementException e) {
+                String message = e instanceof NoSuchElementException ? "Organization not found." : e.getMessage();
+                report.addError(new ImportRowErrorDTO(row, userDTO.getUsername(), message));
+                continue;
+            }
+
+            chunk.add(new ImportRow(row, userDTO));
+            if (chunk.size() >= chunkSize) {
+                persistChunk(chunk, report);
+                chunk.clear();
+            }
+        }
+
+        if (!chunk.isEmpty())
+            persistChunk(chunk, report);
+
+        logger.info("Imported {} of {} users ({} rejected)", report.getImportedRows(), report.getProcessedRows(),
+                report.getFailedRows());
+    }
+
+    /**
+     * Converts the fields of a row into a user dto.
+     *
+     * @throws IllegalArgumentException if the row is not valid.
+     */
+    private UserExtendedDTO parseUser(List<String> fields, Long rootOrganizationId,
+                                      Map<String, OrganizationDTO> organizationsByName) {
+        if (fields.size() < CSV_HEADERS.size() - 1)
+            throw new IllegalArgumentException("Row has too few columns.");
+
+        int i = 0;
+
+        UserExtendedDTO userDTO = new UserExtendedDTO();
+        userDTO.setFirstname(fields.get(i++));
+        userDTO.setLastname(fields.get(i++));
+        userDTO.setUsername(fields.get(i++));
+        userDTO.setPassword(fields.get(i++));
+        userDTO.setRole("USER");
+
+        validateUser(userDTO);
+
+        String enabled = fields.get(i++);
+        if (!enabled.equalsIgnoreCase("true") && !enabled.equalsIgnoreCase("false"))
+            throw new IllegalArgumentException("Enabled must be true or false.");
+        userDTO.setEnabled(Boolean.valueOf(enabled));
+
+        // All the following columns are expected to be names of existing organizations.
+        Set<OrganizationDTO> organizations = new HashSet<>();
+
+        while (i < fields.size()) {
+            String name = fields.get(i++);
+            if (name.isEmpty())
+                continue;
+
+            OrganizationDTO organizationDTO = resolveOrganization(name, organizationsByName);
+            if (organizationDTO == null)
+                throw new IllegalArgumentException("Organization " + name + " not found.");
+
+            checkOrganization(organizationDTO, rootOrganizationId, name);
+
+            organizations.add(organizationDTO);
+        }
+
+        userDTO.setOrganizations(organizations);
+
+        return userDTO;
+    }
+
+    /**
+     * Checks the properties required of every imported user.
+     *
+     * @throws IllegalArgumentException if the user is not valid.
+     */
+    private static void validateUser(UserExtendedDTO userDTO) {
+        if (userDTO.getUsername() == null || userDTO.getUsername().isEmpty())
+            throw new IllegalArgumentException("Username is missing.");
+        if (userDTO.getPassword() == null || userDTO.getPassword().isEmpty())
+            throw new IllegalArgumentException("Password is missing.");
+        if (!"USER".equals(userDTO.getRole()))
+            throw new IllegalArgumentException("Not authorized to create other roles than user.");
+    }
+
+    /**
+     * Checks that an organization lies within the organization tree of the given root organization.
+     *
+     * @throws IllegalArgumentException if the organization is outside the tree.
+     */
+    private void checkOrganization(OrganizationDTO organizationDTO, Long rootOrganizationId, String name) {
+        // Admin is only allowed to add users to organizations within its own organization tree
+        if (organizationDTO.getId() == null
+                || !orgService.isOrganizationChildOfRootParent(organizationDTO.getId(), rootOrganizationId))
+            throw new IllegalArgumentException("Not authorized to create user in organization " + name + ".");
+    }
+
+    /**
+     * Looks up an organization by name, remembering both found and missing names for the rest of the import.
+     */
+    private OrganizationDTO resolveOrganization(String name, Map<String, OrganizationDTO> organizationsByName) {
+        if (organizationsByName.containsKey(name))
+            return organizationsByName.get(name);
+
+        OrganizationDTO organizationDTO;
+        try {
+            organizationDTO = orgService.getOrganizationByName(name);
+        } catch (NoSuchElementException e) {
+            organizationDTO = null;
+        }
+        organizationsByName.put(name, organizationDTO);
+        return organizationDTO;
+    }
+
+    /**
+     * Persists a chunk of parsed rows in one transaction. Rows with usernames that are already taken are rejected up
+     * front. Should the chunk still fail to persist, its rows are retried one by one to single out the failing rows.
+     */
+    private void persistChunk(List<ImportRow> chunk, ImportReportDTO report) {
+        List<String> usernames = new ArrayList<>(chunk.size());
+        for (ImportRow r: chunk) {
+            usernames.add(r.user.getUsername());
+        }
+
+        Set<String> taken = new HashSet<>(userRepository.findExistingUsernames(usernames));
+        List<ImportRow> accepted = new ArrayList<>(chunk.size());
+
+        for (ImportRow r: chunk) {
+            if (taken.add(r.user.getUsername()))
+                accepted.add(r);
+            else
+                report.addError(new ImportRowErrorDTO(r.row, r.user.getUsername(), "Username already exists."));
+        }
+
+        List<UserExtendedDTO> userDTOS = new ArrayList<>(accepted.size());
+        for (ImportRow r: accepted) {
+            userDTOS.add(r.user);
+        }
+
+        try {
+            userService.addUsers(userDTOS);
+            report.addImported(userDTOS.size());
+        } catch (Exception e) {
+            logger.warn("Failed to persist chunk of {} users, retrying row by row: {}", userDTOS.size(), e.getMessage());
+            for (ImportRow r: accepted) {
+                try {
+                    userService.addUsers(Collections.singletonList(r.user));
+                    report.addImported(1);
+                } catch (Exception rowException) {
+                    report.addError(new ImportRowErrorDTO(r.row, r.user.getUsername(), "User could not be saved."));
+                }
+            }
+        }
+
+        // Detach the persisted users so that the persistence context does not grow with the import
+        entityManager.clear();
+    }
+
+    /**
+     * A parsed row together with its row number in the input.
+     */
+    private static class ImportRow {
+        private final long row;
+        private final UserExtendedDTO user;
+
+        private ImportRow(long row, UserExtendedDTO user) {
+            this.row = row;
+            this.user = user;
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package com.example.AuthorizationServer.service;
 
+import com.example.AuthorizationServer.bo.dto.CursorPageDTO;
 import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
 import com.example.AuthorizationServer.bo.dto.UserDTO;
 import com.example.AuthorizationServer.bo.dto.UserExtendedDTO;
+import com.example.AuthorizationServer.bo.entity.DeletedUser;
 import com.example.AuthorizationServer.bo.entity.Organization;
 import com.example.AuthorizationServer.bo.entity.User;
+import com.example.AuthorizationServer.repository.DeletedUserRepository;
 import com.example.AuthorizationServer.repository.OrganizationRepository;
 import com.example.AuthorizationServer.repository.UserRepository;
+import com.example.AuthorizationServer.security.PasswordHashingExecutor;
+import com.example.AuthorizationServer.security.SecurityStampRegistry;
+import com.example.AuthorizationServer.security.UserDetailsCache;
+import com.example.AuthorizationServer.utility.CursorCodec;
 import com.example.AuthorizationServer.utility.MapperUtil;
-import com.example.AuthorizationServer.utility.UserEntityDTOComparator;
+import com.example.AuthorizationServer.utility.OffsetLimitPageRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.oauth2.common.exceptions.UnauthorizedUserException;
 import org.springframework.stereotype.Service;
@@ -37,12 +46,25 @@ public class UserService {
 
     private BCryptPasswordEncoder bCryptPasswordEncoder;
 
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    private final UserDetailsCache userDetailsCache;
+
+    private final SecurityStampRegistry securityStampRegistry;
+
+    private final DeletedUserRepository deletedUserRepository;
+
     @Autowired
-    public UserService(UserRepository userRepository, OrganizationRepository orgRepository, OrganizationService orgService, MapperUtil mapperUtil) {
+    public UserService(UserRepository userRepository, OrganizationRepository orgRepository, OrganizationService orgService,
+                       MapperUtil mapperUtil, UserDetailsCache userDetailsCache,
+                       SecurityStampRegistry securityStampRegistry, DeletedUserRepository deletedUserRepository) {
         this.userRepository = userRepository;
         this.orgRepository = orgRepository;
         this.orgService = orgService;
         this.mapperUtil = mapperUtil;
+        this.userDetailsCache = userDetailsCache;
+        this.securityStampRegistry = securityStampRegistry;
+        this.deletedUserRepository = deletedUserRepository;
     }
 
     @Autowired
@@ -50,6 +72,11 @@ public class UserService {
         this.bCryptPasswordEncoder = bCryptPasswordEncoder;
     }
 
+    @Autowired
+    public void setPasswordHashingExecutor(PasswordHashingExecutor passwordHashingExecutor) {
+        this.passwordHashingExecutor = passwordHashingExecutor;
+    }
+
     /**
      * Fetches a user dto from username.
      *
@@ -124,19 +151,26 @@ public class UserService {
     }
 
     /**
-     * Creates multiple users.
+     * Creates multiple users. Passwords are hashed in parallel.
      *
      * @param userDTOS the list of user dtos representing the new users to be created.
      */
     public void addUsers(List<UserExtendedDTO> userDTOS) {
 
         List<User> users = new ArrayList<>();
+        List<String> rawPasswords = new ArrayList<>();
 
         for (UserExtendedDTO u: userDTOS) {
             User user = mapperUtil.convertToEntity(u);
-            user.setPassword(bCryptPasswordEncoder.encode(user.getPassword()));
+            rawPasswords.add(user.getPassword());
             users.add(user);
         }
+
+        List<String> encodedPasswords = passwordHashingExecutor.encodeAll(rawPasswords);
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).setPassword(encodedPasswords.get(i));
+        }
+
         userRepository.saveAll(users);
     }
 
@@ -155,29 +189,69 @@ public class UserService {
             throw new NoSuchElementException(); // ?
 
         User updatedUser = optionalUser.get();
+        // Covers password, enabled and membership changes as well as renames
+        userDetailsCache.invalidate(updatedUser.getUsername());
 
-        if(!userDTO.getUsername().equals(""))
+        // Changes to anything embedded in issued tokens move the security stamp forward
+        boolean stampChanged = false;
+        if(!userDTO.getUsername().equals("")) {
+            stampChanged |= !userDTO.getUsername().equals(updatedUser.getUsername());
             updatedUser.setUsername(userDTO.getUsername());
+        }
         if(!userDTO.getFirstname().equals(""))
             updatedUser.setFirstname(userDTO.getFirstname());
         if(!userDTO.getLastname().equals(""))
             updatedUser.setLastname(userDTO.getLastname());
-        if(!userDTO.getPassword().equals(""))
+        if(!userDTO.getPassword().equals("")) {
+            stampChanged = true;
             updatedUser.setPassword(bCryptPasswordEncoder.encode(userDTO.getPassword()));
+        }
         // System does not allow for changing role of user
-        if(userDTO.getEnabled() != null)
+        if(userDTO.getEnabled() != null) {
+            stampChanged |= !userDTO.getEnabled().equals(updatedUser.getEnabled());
             updatedUser.setEnabled(userDTO.getEnabled());
+        }
         if(userDTO.getOrganizations() != null) {
             Set<Organization> organizations = new HashSet<>();
             for (OrganizationDTO o : userDTO.getOrganizations()) {
                 organizations.add(mapperUtil.convertToEntity(o));
             }
+            stampChanged |= !organizationIds(organizations).equals(organizationIds(updatedUser.getOrganizations()));
             updatedUser.setOrganizations(organizations);
         }
+        if (stampChanged) {
+            updatedUser.bumpSecurityStamp();
+            securityStampRegistry.record(updatedUser.getId(), updatedUser.getSecurityStamp());
+        }
 
         return mapperUtil.convertUserEntityToDto(userRepository.save(updatedUser));
     }
 
+    /**
+     * Revokes every token issued to a user so far by moving the security stamp of the user forward.
+     *
+     * @param id the id of the user.
+     */
+    public void revokeTokens(Long id) {
+        Optional<User> optionalUser = getUserById(id);
+        if (!optionalUser.isPresent())
+            throw new NoSuchElementException();
+        User user = optionalUser.get();
+        user.bumpSecurityStamp();
+        userRepository.save(user);
+        userDetailsCache.invalidate(user.getUsername());
+        securityStampRegistry.record(user.getId(), user.getSecurityStamp());
+    }
+
+    private static Set<Long> organizationIds(Set<Organization> organizations) {
+        Set<Long> ids = new HashSet<>();
+        if (organizations != null) {
+            for (Organization o: organizations)
+                ids.add(o.getId());
+        }
+        return ids;
+    }
+
     /**
      * Deletes a user.
      *
@@ -188,6 +262,12 @@ public class UserService {
         Optional<User> optionalUser = userRepository.findByRoleAndId(role, id);
         if (!optionalUser.isPresent())
             throw new NoSuchElementException();
+        User user = optionalUser.get();
+        userDetailsCache.invalidate(user.getUsername());
+        // Other nodes cannot see the stamp of a deleted user, so they poll it from its tombstone
+        user.bumpSecurityStamp();
+        deletedUserRepository.save(new DeletedUser(user.getId(), user.getSecurityStamp()));
+        securityStampRegistry.record(user.getId(), user.getSecurityStamp());
         userRepository.deleteByRoleAndId(role, id);
     }
 
@@ -221,14 +301,7 @@ public class UserService {
      * @return the dtos of the users found.
      */
     public List<UserDTO> getAllUsersByRootOrganization(Long organizationId, int limit, int offset) {
-        List<UserDTO> all = getAllUsersByRootOrganization(organizationId);
-
-        return new ArrayList<>(
-                all.subList(
-                        Math.min(all.size(), offset),
-                        Math.min(all.size(), offset + limit)
-                )
-        );
+        return findAllUsersInOrganizationTree(organizationId, new OffsetLimitPageRequest(offset, limit));
     }
 
     /**
@@ -250,38 +323,74 @@ public class UserService {
      * @return the list of user dtos representing the users found.
      */
     public List<UserDTO> getAllUsersByRootOrganization(Long organizationId) {
+        return findAllUsersInOrganizationTree(organizationId, Pageable.unpaged());
+    }
 
+    /**
+     * Fetches a page of unique users belonging to a given root organization or one of its sub organizations. Results
+     * are sorted by username and start after the username encoded in the given cursor, so that every page costs the
+     * same regardless of how deep into the listing it is.
+     *
+     * @param organizationId the id of the root organization.
+     * @param cursor the cursor returned with the previous page or null for the first page.
+     * @param limit the upper limit of how many users to retrieve.
+     * @param withTotal whether to include the exact total number of users.
+     * @return the page of user dtos.
+     */
+    public CursorPageDTO<UserDTO> getUsersPageByRootOrganization(Long organizationId, String cursor, int limit,
+                                                                 boolean withTotal) {
         if(!orgService.isRootOrganization(organizationId))
             throw new NoSuchElementException();
 
-        Optional<Organization> optionalOrganization = orgRepository.findById(organizationId);
+        if (limit < 1)
+            throw new IllegalArgumentException("Limit must be at least one.");
 
-        if(!optionalOrganization.isPresent())
-            throw new NoSuchElementException();
+        String after = "";
+        if (cursor != null && !cursor.isEmpty())
+            after = CursorCodec.decode(cursor, 1)[0];
 
-        Organization organization = optionalOrganization.get();
+        String path = organizationId.toString();
+
+        // Fetch one extra user to find out whether there is a next page
+        List<User> users = userRepository.findAllInOrganizationTreeAfter(path, "USER", true, after,
+                PageRequest.of(0, limit + 1));
 
-        List<OrganizationDTO> subOrganizations = orgService.getAllChildrenOfOrganization(organization.getId());
+        List<UserDTO> userDTOS = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, users.size()); i++) {
+            userDTOS.add(mapperUtil.convertUserEntityToDto(users.get(i)));
+        }
 
-        Set<UserDTO> users = new HashSet<>();
+        String nextCursor = null;
+        if (users.size() > limit)
+            nextCursor = CursorCodec.encode(userDTOS.get(userDTOS.size() - 1).getUsername());
 
-        // Add root organization members
-        List<UserDTO> rootMembers = this.getAllUsersByOrganization(organization.getId());
-        users.addAll(rootMembers);
+        Long total = null;
+        if (withTotal)
+            total = userRepository.countAllInOrganizationTree(path, "USER", true);
 
-        for (OrganizationDTO o: subOrganizations) {
-            Optional<Organization> optional = orgRepository.findById(o.getId());
-            if(!optional.isPresent())
-                throw new NoSuchElementException();
-            List<UserDTO> members = this.getAllUsersByOrganization(o.getId());
-            users.addAll(members);
-        }
+        return new CursorPageDTO<>(userDTOS, nextCursor, total);
+    }
 
-        List<UserDTO> result = new ArrayList<>(users);
+    /**
+     * Fetches the users with user role belonging to a given root organization or one of its sub organizations in a
+     * single query, with ordering and pagination performed by the database.
+     *
+     * @param organizationId the id of the root organization.
+     * @param pageable the page of users to retrieve.
+     * @return the list of user dtos representing the users found.
+     */
+    private List<UserDTO> findAllUsersInOrganizationTree(Long organizationId, Pageable pageable) {
+        if(!orgService.isRootOrganization(organizationId))
+            throw new NoSuchElementException();
 
-        // Sort by username
-        result.sort(UserEntityDTOComparator.INSTANCE);
+        // The path of a root organization consists of its id only
+        List<User> users = userRepository.findAllInOrganizationTree(organizationId.toString(), "USER", true,
+                pageable);
 
+        List<UserDTO> result = new ArrayList<>();
+        for (User u: users) {
+            result.add(mapperUtil.convertUserEntityToDto(u));
+        }
         return result;
     }
 }
@@ -0,0 +1,106 @@
+package com.example.AuthorizationServer.utility;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe Bloom filter of strings. Answers whether a string might have been added, with no false negatives and a
+ * false positive rate close to the one it was sized for as long as no more than the expected number of strings are
+ * added. Strings cannot be removed, so a filter is rebuilt when its contents shrink.
+ *
+ * Bit positions are derived from a single 64-bit hash using double hashing, so a lookup costs one pass over the string
+ * plus one memory read per hash function.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray words;
+
+    private final long bitCount;
+
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions the number of strings the filter is sized for.
+     * @param falsePositiveRate the false positive rate at the expected number of strings.
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1.");
+        long n = Math.max(1, expectedInsertions);
+        long bits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.words = new AtomicLongArray((int) Math.max(1, (bits + 63) / 64));
+        this.bitCount = words.length() * 64L;
+        this.hashCount = (int) Math.max(1, Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    /**
+     * Adds a string.
+     *
+     * @param value the string.
+     */
+    public void put(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++)
+            setBit(index(h1, h2, i));
+    }
+
+    /**
+     * Checks if a string might have been added.
+     *
+     * @param value the string.
+     * @return false if the string has certainly not been added, otherwise true.
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = index(h1, h2, i);
+            if ((words.get((int) (index >>> 6)) & (1L << index)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Fetches the size of the filter.
+     *
+     * @return the number of bits.
+     */
+    public long bitCount() {
+        return bitCount;
+    }
+
+    private long index(int h1, int h2, int i) {
+        return ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+    }
+
+    private void setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long current;
+        do {
+            current = words.get(word);
+            if ((current & mask) != 0)
+                return;
+        } while (!words.compareAndSet(word, current, current | mask));
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters of a string, followed by the MurmurHash3 finalizer to spread the bits.
+     */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
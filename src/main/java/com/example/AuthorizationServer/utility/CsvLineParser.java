@@ -0,0 +1,56 @@
+package com.example.AuthorizationServer.utility;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses single lines of comma separated values. Fields may be enclosed in double quotes, in which case they may
+ * contain commas and escaped ("") double quotes.
+ */
+public class CsvLineParser {
+
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+
+    /**
+     * Splits a line into its fields.
+     *
+     * @param line the line to parse.
+     * @return the fields of the line.
+     * @throws IllegalArgumentException if a quoted field is not terminated.
+     */
+    public static List<String> parse(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == QUOTE) {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == QUOTE) {
+                        field.append(QUOTE);
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == QUOTE) {
+                quoted = true;
+            } else if (c == SEPARATOR) {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        if (quoted)
+            throw new IllegalArgumentException("Unterminated quoted field.");
+
+        fields.add(field.toString().trim());
+        return fields;
+    }
+}
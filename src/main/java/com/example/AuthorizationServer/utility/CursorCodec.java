@@ -0,0 +1,45 @@
+package com.example.AuthorizationServer.utility;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the opaque cursor tokens used for keyset pagination. A cursor holds the sort key values of the
+ * last item of a page.
+ */
+public class CursorCodec {
+
+    private static final String SEPARATOR = "\u001F";
+
+    /**
+     * Encodes sort key values into a cursor token.
+     *
+     * @param keys the sort key values of the last item of a page.
+     * @return the cursor token.
+     */
+    public static String encode(String... keys) {
+        String joined = String.join(SEPARATOR, keys);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(joined.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor token into its sort key values.
+     *
+     * @param cursor the cursor token.
+     * @param expectedKeys the number of sort key values the cursor should contain.
+     * @return the sort key values.
+     * @throws IllegalArgumentException if the cursor is malformed.
+     */
+    public static String[] decode(String cursor, int expectedKeys) {
+        String joined;
+        try {
+            joined = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor.");
+        }
+        String[] keys = joined.split(SEPARATOR, -1);
+        if (keys.length != expectedKeys)
+            throw new IllegalArgumentException("Malformed cursor.");
+        return keys;
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.AuthorizationServer.utility;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Thread safe in-memory cache bounded both by size and by age. Entries are evicted least recently used first once the
+ * maximum size is reached and are treated as absent once they are older than the time to live.
+ *
+ * @param <K> the key type.
+ * @param <V> the value type.
+ */
+public class ExpiringLruCache<K, V> {
+
+    // Properties ---------------------------------------------------------------------------------
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+
+    // Constructors -------------------------------------------------------------------------------
+    public ExpiringLruCache(int maxSize, long ttlMillis) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("Max size must be at least one.");
+        if (ttlMillis < 1)
+            throw new IllegalArgumentException("Time to live must be at least one millisecond.");
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        // Access order makes iteration start at the least recently used entry
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                return size() > ExpiringLruCache.this.maxSize;
+            }
+        };
+    }
+
+    // Actions ------------------------------------------------------------------------------------
+
+    /**
+     * Fetches a value from the cache.
+     *
+     * @param key the key of the value.
+     * @return the value or null if it is not cached or has expired.
+     */
+    public synchronized V get(K key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null)
+            return null;
+        if (entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Adds or replaces a value in the cache.
+     *
+     * @param key the key of the value.
+     * @param value the value.
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, new CacheEntry<>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * Adds or replaces a value in the cache that expires at a given time, or after the time to live if that is sooner.
+     *
+     * @param key the key of the value.
+     * @param value the value.
+     * @param expiresAtMillis the time at which the value expires, in milliseconds since the epoch.
+     */
+    public synchronized void put(K key, V value, long expiresAtMillis) {
+        entries.put(key, new CacheEntry<>(value, Math.min(expiresAtMillis, System.currentTimeMillis() + ttlMillis)));
+    }
+
+    /**
+     * Removes a value from the cache.
+     *
+     * @param key the key of the value.
+     */
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes every value matching a condition, as well as every expired value.
+     *
+     * @param condition the condition of values to remove.
+     * @return the number of removed values that matched the condition.
+     */
+    public synchronized int invalidateIf(Predicate<? super V> condition) {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        Iterator<CacheEntry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            CacheEntry<V> entry = iterator.next();
+            if (entry.isExpired(now)) {
+                iterator.remove();
+            } else if (condition.test(entry.value)) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes all values from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Fetches the number of cached values, including values that have expired but not yet been evicted.
+     *
+     * @return the number of values.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static class CacheEntry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private CacheEntry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
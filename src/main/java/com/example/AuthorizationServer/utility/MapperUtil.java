@@ -1,16 +1,13 @@
 package com.example.AuthorizationServer.utility;
 
 import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
-import com.example.AuthorizationServer.bo.dto.OrganizationTreeNodeDTO;
 import com.example.AuthorizationServer.bo.dto.UserDTO;
 import com.example.AuthorizationServer.bo.dto.UserExtendedDTO;
 import com.example.AuthorizationServer.bo.entity.Organization;
 import com.example.AuthorizationServer.bo.entity.User;
-import org.modelmapper.ModelMapper;
 import org.springframework.expression.ParseException;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -18,13 +15,12 @@ import java.util.Set;
 /**
  * @author Jonas Fredén-Lundvall (jonlundv@kth.se)
  *
- * Utility for mapping and converting between entity and dto classes.
+ * Utility for mapping and converting between entity and dto classes. Mappings are written out by hand rather than
+ * resolved through reflection since they run once per user and organization in every list endpoint and on login.
  */
 @Service
 public class MapperUtil {
 
-    private ModelMapper modelMapper = new ModelMapper();
-
     /**
      * Converts a user and its organization memberships into a user dto with organization dto memberships.
      *
@@ -32,7 +28,7 @@ public class MapperUtil {
      * @return the corresponding user dto
      */
     public UserDTO convertUserEntityToDto(User user) {
-        Set<OrganizationDTO> orgDtos = new HashSet<>();
+        Set<OrganizationDTO> orgDtos = new HashSet<>(capacityFor(user.getOrganizations().size()));
 
         for (Organization o: user.getOrganizations()) {
             orgDtos.add(convertToDto(o));
@@ -51,7 +47,13 @@ public class MapperUtil {
      * @return the corresponding user dto.
      */
     public UserDTO convertToDto(User user) {
-        UserDTO userDTO = modelMapper.map(user, UserDTO.class);
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId(user.getId());
+        userDTO.setFirstname(user.getFirstname());
+        userDTO.setLastname(user.getLastname());
+        userDTO.setUsername(user.getUsername());
+        userDTO.setRole(user.getRole());
+        userDTO.setEnabled(user.getEnabled());
         return userDTO;
     }
 
@@ -62,8 +64,8 @@ public class MapperUtil {
      * @return the corresponding organization dto.
      */
     public OrganizationDTO convertToDto(Organization organization) {
-        OrganizationDTO organizationDTO = modelMapper.map(organization, OrganizationDTO.class);
-        return organizationDTO;
+        return new OrganizationDTO(organization.getId(), organization.getName(), organization.getPath(),
+                organization.getEnabled());
     }
 
     /**
@@ -73,7 +75,11 @@ public class MapperUtil {
      * @return the corresponding user.
      */
     public Organization convertToEntity(OrganizationDTO organizationDto) throws ParseException {
-        Organization organization = modelMapper.map(organizationDto, Organization.class);
+        Organization organization = new Organization();
+        organization.setId(organizationDto.getId());
+        organization.setName(organizationDto.getName());
+        organization.setPath(organizationDto.getPath());
+        organization.setEnabled(organizationDto.getEnabled());
         return organization;
     }
 
@@ -84,27 +90,29 @@ public class MapperUtil {
      * @return the corresponding user.
      */
     public User convertToEntity(UserExtendedDTO userDto) throws ParseException {
-        User newUser = modelMapper.map(userDto, User.class);
+        User newUser = new User();
+        newUser.setId(userDto.getId());
+        newUser.setFirstname(userDto.getFirstname());
+        newUser.setLastname(userDto.getLastname());
+        newUser.setUsername(userDto.getUsername());
+        newUser.setPassword(userDto.getPassword());
+        newUser.setRole(userDto.getRole());
+        newUser.setEnabled(userDto.getEnabled());
+
+        if (userDto.getOrganizations() != null) {
+            Set<Organization> organizations = new HashSet<>(capacityFor(userDto.getOrganizations().size()));
+            for (OrganizationDTO o: userDto.getOrganizations()) {
+                organizations.add(convertToEntity(o));
+            }
+            newUser.setOrganizations(organizations);
+        }
         return newUser;
     }
 
     /**
-     * Converts organization dtos to organization tree node dtos.
-     *
-     * @param organizations the organizations to be converted.
-     * @return the corresponding organization tree node dtos.
+     * Hash set capacity that holds the given number of elements without rehashing.
      */
-    public List<OrganizationTreeNodeDTO> convertToTreeNodeDtos(List<OrganizationDTO> organizations) {
-        List<OrganizationTreeNodeDTO> nodes = new ArrayList<>();
-
-        for (OrganizationDTO o: organizations) {
-            OrganizationTreeNodeDTO n = new OrganizationTreeNodeDTO();
-            n.setId(o.getId());
-            n.setName(o.getName());
-            n.setPath(o.getPath());
-            n.setEnabled(o.getEnabled());
-            nodes.add(n);
-        }
-        return nodes;
+    private static int capacityFor(int size) {
+        return Math.max(16, (int) (size / 0.75f) + 1);
     }
 }
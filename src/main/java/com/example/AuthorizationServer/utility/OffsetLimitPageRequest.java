@@ -0,0 +1,62 @@
+package com.example.AuthorizationServer.utility;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Pageable that addresses results by an arbitrary offset and limit rather than by page number, which allows limit and
+ * offset request parameters to be pushed down to the database unchanged.
+ */
+public class OffsetLimitPageRequest implements Pageable {
+
+    // Properties ---------------------------------------------------------------------------------
+    private final long offset;
+    private final int limit;
+    private final Sort sort;
+
+    // Constructors -------------------------------------------------------------------------------
+    public OffsetLimitPageRequest(long offset, int limit, Sort sort) {
+        if (offset < 0)
+            throw new IllegalArgumentException("Offset must not be negative.");
+        if (limit < 1)
+            throw new IllegalArgumentException("Limit must be at least one.");
+        this.offset = offset;
+        this.limit = limit;
+        this.sort = sort;
+    }
+
+    public OffsetLimitPageRequest(long offset, int limit) {
+        this(offset, limit, Sort.unsorted());
+    }
+
+    // Pageable -----------------------------------------------------------------------------------
+    @Override
+    public int getPageNumber() { return (int) (offset / limit); }
+
+    @Override
+    public int getPageSize() { return limit; }
+
+    @Override
+    public long getOffset() { return offset; }
+
+    @Override
+    public Sort getSort() { return sort; }
+
+    @Override
+    public Pageable next() {
+        return new OffsetLimitPageRequest(offset + limit, limit, sort);
+    }
+
+    @Override
+    public Pageable previousOrFirst() {
+        return hasPrevious() ? new OffsetLimitPageRequest(Math.max(0, offset - limit), limit, sort) : first();
+    }
+
+    @Override
+    public Pageable first() {
+        return new OffsetLimitPageRequest(0, limit, sort);
+    }
+
+    @Override
+    public boolean hasPrevious() { return offset > 0; }
+}
@@ -0,0 +1,25 @@
+package com.example.AuthorizationServer.utility;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.TableGenerator;
+
+import java.io.Serializable;
+
+/**
+ * Pooled table id generator that keeps ids already assigned to an entity. This lets services allocate ids from the
+ * same id_generator segment ahead of saving, for example to write paths that contain the ids of new organizations,
+ * so that each entity is inserted once with its final state instead of inserted and then updated.
+ *
+ * Entities with preassigned ids must be saved through Session.save, since JPA's persist treats them as detached.
+ */
+public class PreassignedIdTableGenerator extends TableGenerator {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        Serializable id = session.getEntityPersister(null, object).getIdentifier(object, session);
+        return id != null ? id : super.generate(session, object);
+    }
+}
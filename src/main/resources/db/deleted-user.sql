@@ -0,0 +1,9 @@
+-- Adds the tombstones of deleted users, polled by every node for the final security stamps of deleted users, to an
+-- existing database. Apply once before starting the server with ddl-auto set to none or validate.
+
+CREATE TABLE IF NOT EXISTS deleted_user (
+    deleted_user_id BIGINT NOT NULL,
+    deleted_user_security_stamp BIGINT NOT NULL,
+    PRIMARY KEY (deleted_user_id),
+    INDEX idx_deleted_user_security_stamp (deleted_user_security_stamp)
+) ENGINE = InnoDB;
@@ -0,0 +1,16 @@
+-- Adds the status table of asynchronous user import jobs, which lets any node answer status polls for a job, to an
+-- existing database. Apply once before starting the server with ddl-auto set to none or validate.
+
+CREATE TABLE IF NOT EXISTS import_job (
+    import_job_id VARCHAR(36) NOT NULL,
+    import_job_owner VARCHAR(255) NOT NULL,
+    import_job_status VARCHAR(16) NOT NULL,
+    import_job_message VARCHAR(1000),
+    import_job_submitted BIGINT NOT NULL,
+    import_job_started BIGINT,
+    import_job_finished BIGINT,
+    import_job_updated BIGINT NOT NULL,
+    import_job_report LONGTEXT,
+    PRIMARY KEY (import_job_id),
+    INDEX idx_import_job_finished (import_job_finished)
+) ENGINE = InnoDB;
@@ -0,0 +1,13 @@
+-- Adds the change time of organizations and the tombstones of deleted organizations, which every node polls to keep
+-- its organization hierarchy index current, to an existing database. Apply once before starting the server with
+-- ddl-auto set to none or validate.
+
+ALTER TABLE organizations ADD COLUMN org_changed_at BIGINT NOT NULL DEFAULT 0;
+CREATE INDEX idx_organizations_changed_at ON organizations (org_changed_at);
+
+CREATE TABLE IF NOT EXISTS deleted_organization (
+    deleted_organization_id BIGINT NOT NULL,
+    deleted_organization_deleted_at BIGINT NOT NULL,
+    PRIMARY KEY (deleted_organization_id),
+    INDEX idx_deleted_organization_deleted_at (deleted_organization_deleted_at)
+) ENGINE = InnoDB;
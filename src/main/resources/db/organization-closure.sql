@@ -0,0 +1,24 @@
+-- Adds the path index and the closure table of the organization hierarchy engines to an existing database, and fills
+-- the closure table from the organization paths. Apply once before starting the server with ddl-auto set to none or
+-- validate, and again to rebuild the closure table. Needs MySQL 8 for the recursive common table expression.
+
+CREATE INDEX idx_organizations_path ON organizations (org_path);
+
+CREATE TABLE IF NOT EXISTS organization_closure (
+    closure_ancestor_id BIGINT NOT NULL,
+    closure_descendant_id BIGINT NOT NULL,
+    closure_depth INT NOT NULL,
+    PRIMARY KEY (closure_ancestor_id, closure_descendant_id),
+    INDEX idx_organization_closure_descendant (closure_descendant_id, closure_depth)
+);
+
+DELETE FROM organization_closure;
+
+INSERT INTO organization_closure (closure_ancestor_id, closure_descendant_id, closure_depth)
+WITH RECURSIVE ancestry (descendant_id, rest, depth) AS (
+    SELECT org_id, COALESCE(NULLIF(org_path, ''), CAST(org_id AS CHAR)), 0 FROM organizations
+    UNION ALL
+    SELECT descendant_id, SUBSTRING(rest, 1, LENGTH(rest) - LENGTH(SUBSTRING_INDEX(rest, '.', -1)) - 1), depth + 1
+    FROM ancestry WHERE rest LIKE '%.%'
+)
+SELECT CAST(SUBSTRING_INDEX(rest, '.', -1) AS UNSIGNED), descendant_id, depth FROM ancestry;
@@ -0,0 +1,22 @@
+-- Migrates an existing database from AUTO_INCREMENT ids to pooled table ids for users and organizations.
+-- Apply once before starting the server with ddl-auto set to none or validate.
+--
+-- Hibernate's pooled optimizer treats the stored value as the upper bound of the next block of 50 ids, so each
+-- segment is seeded to max(id) + 50 to make the first allocated block start right after the existing rows.
+
+CREATE TABLE IF NOT EXISTS id_generator (
+    sequence_name VARCHAR(255) NOT NULL,
+    next_val BIGINT,
+    PRIMARY KEY (sequence_name)
+) ENGINE = InnoDB;
+
+INSERT INTO id_generator (sequence_name, next_val)
+SELECT 'user', COALESCE(MAX(user_id), 0) + 50 FROM `user`
+ON DUPLICATE KEY UPDATE next_val = GREATEST(next_val, VALUES(next_val));
+
+INSERT INTO id_generator (sequence_name, next_val)
+SELECT 'organization', COALESCE(MAX(org_id), 0) + 50 FROM organizations
+ON DUPLICATE KEY UPDATE next_val = GREATEST(next_val, VALUES(next_val));
+
+-- Ids are now assigned by the application. The AUTO_INCREMENT attribute can stay on the columns since MySQL accepts
+-- explicit ids, but rows must no longer be inserted without one.
@@ -0,0 +1,17 @@
+-- Adds the tables of the token revocation list to an existing database.
+-- Apply once before starting the server with ddl-auto set to none or validate.
+
+CREATE TABLE IF NOT EXISTS revoked_token (
+    revoked_token_jti VARCHAR(255) NOT NULL,
+    revoked_token_expires_at BIGINT NOT NULL,
+    revoked_token_revoked_at BIGINT NOT NULL,
+    PRIMARY KEY (revoked_token_jti),
+    INDEX idx_revoked_token_expires_at (revoked_token_expires_at),
+    INDEX idx_revoked_token_revoked_at (revoked_token_revoked_at)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS client_revocation (
+    client_revocation_client_id VARCHAR(255) NOT NULL,
+    client_revocation_revoked_before BIGINT NOT NULL,
+    PRIMARY KEY (client_revocation_client_id)
+) ENGINE = InnoDB;
@@ -0,0 +1,5 @@
+-- Adds the per-user security stamp embedded in issued tokens to an existing database.
+-- Apply once before starting the server with ddl-auto set to none or validate.
+
+ALTER TABLE `user` ADD COLUMN user_security_stamp BIGINT NOT NULL DEFAULT 0;
+CREATE INDEX idx_user_security_stamp ON `user` (user_security_stamp);
@@ -0,0 +1,111 @@
+package com.example.AuthorizationServer.benchmark;
+
+import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
+import com.example.AuthorizationServer.bo.dto.OrganizationTreeNodeDTO;
+import com.example.AuthorizationServer.bo.dto.UserDTO;
+import com.example.AuthorizationServer.bo.dto.UserExtendedDTO;
+import com.example.AuthorizationServer.bo.entity.Organization;
+import com.example.AuthorizationServer.bo.entity.User;
+import com.example.AuthorizationServer.utility.MapperUtil;
+import org.modelmapper.ModelMapper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Compares the hand-written mappings of MapperUtil with the ModelMapper based mappings they replaced, for the
+ * conversions done by the user, organization and tree endpoints. Each mapping is warmed up before it is timed and the
+ * best of several rounds is reported. Run the main method with the test classpath, optionally passing the number of
+ * objects to map per round.
+ */
+public class MapperBenchmark {
+
+    private static final int ROUNDS = 10;
+
+    // Keeps results reachable so that the mapping work cannot be optimized away
+    private static int sink;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        List<Organization> organizations = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Organization o = new Organization();
+            o.setId((long) i);
+            o.setName("Organization " + i);
+            o.setPath("1." + i);
+            o.setEnabled(true);
+            organizations.add(o);
+        }
+
+        List<User> users = new ArrayList<>();
+        List<UserExtendedDTO> userDtos = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Set<Organization> memberships = new HashSet<>();
+            memberships.add(organizations.get(0));
+            memberships.add(organizations.get(i % count));
+
+            User u = new User("Firstname", "Lastname", "user" + i, "password", "USER", memberships);
+            u.setId((long) i);
+            u.setEnabled(true);
+            users.add(u);
+
+            Set<OrganizationDTO> orgDtos = new HashSet<>();
+            for (Organization o: memberships)
+                orgDtos.add(new OrganizationDTO(o.getId(), o.getName(), o.getPath(), o.getEnabled()));
+            userDtos.add(new UserExtendedDTO(null, "Firstname", "Lastname", "user" + i, "password", "USER", true,
+                    orgDtos));
+        }
+
+        MapperUtil mapperUtil = new MapperUtil();
+        ModelMapper modelMapper = new ModelMapper();
+
+        System.out.printf("Mapping %d objects per round, best of %d rounds%n", count, ROUNDS);
+        System.out.printf("%-34s %14s %14s %10s%n", "mapping", "modelmapper ns", "mapperutil ns", "speed-up");
+
+        compare("Organization -> OrganizationDTO", organizations,
+                o -> modelMapper.map(o, OrganizationDTO.class), mapperUtil::convertToDto);
+        compare("User -> UserDTO (with orgs)", users,
+                u -> modelMapper.map(u, UserDTO.class), mapperUtil::convertUserEntityToDto);
+        compare("UserExtendedDTO -> User", userDtos,
+                u -> modelMapper.map(u, User.class), mapperUtil::convertToEntity);
+        compare("Organization -> tree node", organizations,
+                o -> modelMapper.map(o, OrganizationDTO.class),
+                o -> new OrganizationTreeNodeDTO(o.getId(), o.getName(), o.getPath(), o.getEnabled(),
+                        new ArrayList<>()));
+
+        System.out.println("Checksum: " + sink);
+    }
+
+    private static <T> void compare(String name, List<T> input, Function<T, ?> baseline, Function<T, ?> candidate) {
+        double baselineNanos = measure(input, baseline);
+        double candidateNanos = measure(input, candidate);
+        System.out.printf("%-34s %14.1f %14.1f %9.1fx%n", name, baselineNanos, candidateNanos,
+                baselineNanos / candidateNanos);
+    }
+
+    /**
+     * Returns the best observed time per mapped object in nanoseconds.
+     */
+    private static <T> double measure(List<T> input, Function<T, ?> mapping) {
+        // Warm up
+        for (int i = 0; i < 3; i++)
+            run(input, mapping);
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            run(input, mapping);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / input.size();
+    }
+
+    private static <T> void run(List<T> input, Function<T, ?> mapping) {
+        for (T t: input)
+            sink += System.identityHashCode(mapping.apply(t)) & 1;
+    }
+}
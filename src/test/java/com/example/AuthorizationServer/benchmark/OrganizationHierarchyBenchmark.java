@@ -0,0 +1,305 @@
+package com.example.AuthorizationServer.benchmark;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Compares subtree and ancestor queries of the path and closure table hierarchy engines, and the "contains" query
+ * that subtrees were read with before, on generated organization trees of 10k and 1M organizations. The trees have ten
+ * children per organization with ids numbered level by level, so that many ids share digits. Also compares moving a
+ * subtree two levels below the root with one update per organization against a single update on the path prefix.
+ *
+ * Runs against MySQL 8 with the same statements as OrganizationRepository and OrganizationClosureRepository, on
+ * scratch copies of the organizations and organization_closure tables that are dropped afterwards. Run the main method
+ * with the test classpath, passing the jdbc url, username and password and optionally the tree sizes, e.g.
+ * jdbc:mysql://localhost:3306/oauth_server?rewriteBatchedStatements=true root root 10000 1000000
+ */
+public class OrganizationHierarchyBenchmark {
+
+    private static final int CHILDREN = 10;
+
+    private static final int SAMPLES = 200;
+
+    private static final int INSERT_BATCH_SIZE = 5000;
+
+    private static final String ORGANIZATIONS = "bench_organizations";
+
+    private static final String CLOSURE = "bench_organization_closure";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: OrganizationHierarchyBenchmark <jdbc url> <username> <password> [sizes...]");
+            return;
+        }
+        int[] sizes = args.length > 3 ? new int[args.length - 3] : new int[] {10_000, 1_000_000};
+        for (int i = 3; i < args.length; i++)
+            sizes[i - 3] = Integer.parseInt(args[i]);
+
+        try (Connection connection = DriverManager.getConnection(args[0], args[1], args[2])) {
+            for (int size: sizes) {
+                try {
+                    run(connection, size);
+                } finally {
+                    dropTables(connection);
+                }
+            }
+        }
+    }
+
+    private static void run(Connection connection, int size) throws SQLException {
+        dropTables(connection);
+        createTables(connection);
+
+        long start = System.nanoTime();
+        String[] paths = insertOrganizations(connection, size);
+        long insertMillis = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        int links;
+        try (Statement statement = connection.createStatement()) {
+            links = statement.executeUpdate(rebuildClosureSql());
+        }
+        long closureMillis = (System.nanoTime() - start) / 1_000_000;
+        analyze(connection);
+
+        System.out.printf("%n%d organizations (inserted in %d ms), %d closure links (built in %d ms)%n", size,
+                insertMillis, links, closureMillis);
+        System.out.printf("%-34s %10s %10s %10s%n", "Query", "Rows", "Median ms", "p95 ms");
+
+        Random random = new Random(42);
+        // Subtrees of organizations two levels below the root, ancestors of the deepest organizations
+        List<Long> subTreeRoots = sample(paths, 2, random);
+        List<Long> leaves = sample(paths, maxDepth(paths), random);
+
+        measure("Subtree, contains (before)", subTreeRoots, id -> containsSubTree(connection, id, paths));
+        measure("Subtree, path engine", subTreeRoots, id -> count(connection,
+                "select * from " + ORGANIZATIONS + " where org_path = ? or org_path like ? order by org_path",
+                paths[(int) (id - 1)], paths[(int) (id - 1)] + ".%"));
+        measure("Subtree, closure engine", subTreeRoots, id -> count(connection,
+                "select o.* from " + CLOSURE + " c join " + ORGANIZATIONS + " o on o.org_id = c.closure_descendant_id " +
+                        "where c.closure_ancestor_id = ? order by o.org_path", id));
+        measure("Ancestors, path engine", leaves, id -> pathAncestors(connection, paths[(int) (id - 1)]));
+        measure("Ancestors, closure engine", leaves, id -> count(connection,
+                "select o.* from " + CLOSURE + " c join " + ORGANIZATIONS + " o on o.org_id = c.closure_ancestor_id " +
+                        "where c.closure_descendant_id = ? and c.closure_depth > 0 order by c.closure_depth desc", id));
+
+        // Moves two different subtrees below organization 2, so that neither move benefits from the other
+        if (subTreeRoots.size() > 1 && paths.length > 1) {
+            moveRowByRow(connection, subTreeRoots.get(0), paths);
+            movePathPrefix(connection, subTreeRoots.get(1), paths);
+        }
+    }
+
+    /**
+     * Rewrites the path of every organization in the subtree with one update each, as moving the descendants through
+     * Organization.setParent would.
+     */
+    private static void moveRowByRow(Connection connection, long id, String[] paths) throws SQLException {
+        String oldPath = paths[(int) (id - 1)];
+        String newPath = paths[1] + "." + id;
+        List<Long> ids = new ArrayList<>();
+        List<String> oldPaths = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("select org_id, org_path from " + ORGANIZATIONS +
+                " where org_path = ? or org_path like ?")) {
+            statement.setString(1, oldPath);
+            statement.setString(2, oldPath + ".%");
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                    oldPaths.add(rs.getString(2));
+                }
+            }
+        }
+        long start = System.nanoTime();
+        try (PreparedStatement statement = connection.prepareStatement("update " + ORGANIZATIONS +
+                " set org_path = ?, org_changed_at = ? where org_id = ?")) {
+            for (int i = 0; i < ids.size(); i++) {
+                statement.setString(1, newPath + oldPaths.get(i).substring(oldPath.length()));
+                statement.setLong(2, System.currentTimeMillis());
+                statement.setLong(3, ids.get(i));
+                statement.executeUpdate();
+            }
+        }
+        System.out.printf("%-34s %10d %10.2f%n", "Move subtree, row by row", ids.size(),
+                (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Same statement as OrganizationRepository.replacePathPrefix.
+     */
+    private static void movePathPrefix(Connection connection, long id, String[] paths) throws SQLException {
+        String oldPath = paths[(int) (id - 1)];
+        long start = System.nanoTime();
+        int moved;
+        try (PreparedStatement statement = connection.prepareStatement("update " + ORGANIZATIONS +
+                " set org_path = concat(?, substring(org_path, ?)), org_changed_at = ? " +
+                "where org_path = ? or org_path like ?")) {
+            statement.setString(1, paths[1] + "." + id);
+            statement.setInt(2, oldPath.length() + 1);
+            statement.setLong(3, System.currentTimeMillis());
+            statement.setString(4, oldPath);
+            statement.setString(5, oldPath + ".%");
+            moved = statement.executeUpdate();
+        }
+        System.out.printf("%-34s %10d %10.2f%n", "Move subtree, path prefix update", moved,
+                (System.nanoTime() - start) / 1e6);
+    }
+
+    private interface Query {
+        int run(long id) throws SQLException;
+    }
+
+    private static void measure(String name, List<Long> ids, Query query) throws SQLException {
+        // Warm up
+        for (Long id: ids.subList(0, Math.min(20, ids.size())))
+            query.run(id);
+
+        long[] nanos = new long[ids.size()];
+        long rows = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            long start = System.nanoTime();
+            rows += query.run(ids.get(i));
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%-34s %10d %10.2f %10.2f%n", name, rows / ids.size(), nanos[nanos.length / 2] / 1e6,
+                nanos[(int) (nanos.length * 0.95)] / 1e6);
+    }
+
+    /**
+     * The query subtrees were read with before, including the filtering of organizations whose path merely contains
+     * the digits of the id.
+     */
+    private static int containsSubTree(Connection connection, long id, String[] paths) throws SQLException {
+        String rootPath = paths[(int) (id - 1)];
+        int matches = 0;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "select * from " + ORGANIZATIONS + " where org_path like ? order by org_path")) {
+            statement.setString(1, "%" + id + "%");
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    String path = rs.getString("org_path");
+                    if (path.equals(rootPath) || path.startsWith(rootPath + "."))
+                        matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static int pathAncestors(Connection connection, String path) throws SQLException {
+        String[] ids = path.split("\\.");
+        StringBuilder sql = new StringBuilder("select * from " + ORGANIZATIONS + " where org_id in (");
+        for (int i = 0; i < ids.length - 1; i++)
+            sql.append(i == 0 ? "?" : ", ?");
+        sql.append(")");
+        Object[] params = Arrays.copyOf(ids, ids.length - 1, Object[].class);
+        return count(connection, sql.toString(), params);
+    }
+
+    private static int count(Connection connection, String sql, Object... params) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++)
+                statement.setObject(i + 1, params[i]);
+            int rows = 0;
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next())
+                    rows++;
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Inserts a tree of organizations numbered level by level from 1, and returns the path of every organization
+     * indexed by id - 1.
+     */
+    private static String[] insertOrganizations(Connection connection, int size) throws SQLException {
+        String[] paths = new String[size];
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement("insert into " + ORGANIZATIONS +
+                " (org_id, org_name, org_path, org_enabled) values (?, ?, ?, true)")) {
+            for (int i = 0; i < size; i++) {
+                long id = i + 1;
+                // Organization 1 is the root, organization n has parent (n - 2) / CHILDREN + 1
+                paths[i] = i == 0 ? "1" : paths[(i - 1) / CHILDREN] + "." + id;
+                statement.setLong(1, id);
+                statement.setString(2, "Organization " + id);
+                statement.setString(3, paths[i]);
+                statement.addBatch();
+                if ((i + 1) % INSERT_BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                    connection.commit();
+                }
+            }
+            statement.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return paths;
+    }
+
+    private static List<Long> sample(String[] paths, int depth, Random random) {
+        List<Long> candidates = new ArrayList<>();
+        for (int i = 0; i < paths.length; i++) {
+            if (depthOf(paths[i]) == depth)
+                candidates.add((long) i + 1);
+        }
+        Collections.shuffle(candidates, random);
+        return candidates.subList(0, Math.min(SAMPLES, candidates.size()));
+    }
+
+    private static int maxDepth(String[] paths) {
+        return depthOf(paths[paths.length - 1]);
+    }
+
+    private static int depthOf(String path) {
+        int depth = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '.')
+                depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Same statement as OrganizationClosureRepository.insertAllFromPaths, on the scratch tables.
+     */
+    private static String rebuildClosureSql() {
+        return "insert into " + CLOSURE + " (closure_ancestor_id, closure_descendant_id, closure_depth) " +
+                "with recursive ancestry (descendant_id, rest, depth) as (" +
+                "select org_id, coalesce(nullif(org_path, ''), cast(org_id as char)), 0 from " + ORGANIZATIONS + " " +
+                "union all " +
+                "select descendant_id, substring(rest, 1, length(rest) - length(substring_index(rest, '.', -1)) - 1), " +
+                "depth + 1 from ancestry where rest like '%.%') " +
+                "select cast(substring_index(rest, '.', -1) as unsigned), descendant_id, depth from ancestry";
+    }
+
+    private static void createTables(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table " + ORGANIZATIONS + " (org_id bigint not null primary key, " +
+                    "org_name varchar(255) unique, org_path varchar(255), org_enabled bit not null, " +
+                    "org_changed_at bigint not null default 0, " +
+                    "index idx_bench_organizations_path (org_path))");
+            statement.execute("create table " + CLOSURE + " (closure_ancestor_id bigint not null, " +
+                    "closure_descendant_id bigint not null, closure_depth int not null, " +
+                    "primary key (closure_ancestor_id, closure_descendant_id), " +
+                    "index idx_bench_closure_descendant (closure_descendant_id, closure_depth))");
+        }
+    }
+
+    private static void analyze(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("analyze table " + ORGANIZATIONS + ", " + CLOSURE);
+        }
+    }
+
+    private static void dropTables(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists " + CLOSURE);
+            statement.execute("drop table if exists " + ORGANIZATIONS);
+        }
+    }
+}
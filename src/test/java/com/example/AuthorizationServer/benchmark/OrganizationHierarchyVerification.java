@@ -0,0 +1,163 @@
+package com.example.AuthorizationServer.benchmark;
+
+import com.example.AuthorizationServer.AuthorizationServerApplication;
+import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
+import com.example.AuthorizationServer.bo.dto.OrganizationTreeNodeDTO;
+import com.example.AuthorizationServer.repository.OrganizationClosureRepository;
+import com.example.AuthorizationServer.service.ClosureHierarchyEngine;
+import com.example.AuthorizationServer.service.OrganizationImportService;
+import com.example.AuthorizationServer.service.OrganizationService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.StringReader;
+import java.util.*;
+
+/**
+ * Verifies the MySQL specific statements behind organization moves, deletes and imports against a real database: the
+ * recursive common table expressions that fill the closure table from paths, the multi-table delete that detaches a
+ * subtree, insert ignore, the path prefix update of a move and the batched saves of a tree import. After each scenario
+ * the organization_closure table is compared with the links implied by the org_path column, which must match exactly.
+ *
+ * Starts the application with the closure table hierarchy engine against an empty MySQL 8 schema, which is recreated
+ * and seeded as on a normal start. Run the main method with the test classpath, passing the jdbc url, username and
+ * password, e.g. jdbc:mysql://localhost:3306/oauth_verify?rewriteBatchedStatements=true root root
+ * Exits with status 1 if any scenario fails.
+ */
+public class OrganizationHierarchyVerification {
+
+    private static final String PREFIX = "verify-";
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: OrganizationHierarchyVerification <jdbc url> <username> <password>");
+            return;
+        }
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(AuthorizationServerApplication.class)
+                .properties("spring.datasource.url=" + args[0],
+                        "spring.datasource.username=" + args[1],
+                        "spring.datasource.password=" + args[2],
+                        "spring.jpa.hibernate.ddl-auto=create",
+                        "authserver.organizations.hierarchy-engine=closure",
+                        "server.port=0",
+                        "logging.level.org.springframework.web=INFO")
+                .run();
+        try {
+            run(context);
+        } finally {
+            context.close();
+        }
+
+        System.out.printf("%n%s%n", failures == 0 ? "All scenarios passed" : failures + " scenario(s) failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void run(ConfigurableApplicationContext context) throws Exception {
+        OrganizationService organizationService = context.getBean(OrganizationService.class);
+        OrganizationImportService importService = context.getBean(OrganizationImportService.class);
+        OrganizationClosureRepository closureRepository = context.getBean(OrganizationClosureRepository.class);
+        ClosureHierarchyEngine engine = context.getBean(ClosureHierarchyEngine.class);
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+
+        // Seed data is saved without the engine, so the closure table was filled by insertAllFromPaths at startup
+        check("Rebuild from paths at startup", jdbc, null);
+
+        // a -> (b -> (d, e), c)
+        OrganizationTreeNodeDTO imported = importService.importTree(node("a", node("b", node("d"), node("e")),
+                node("c")), null);
+        Map<String, Long> ids = new HashMap<>();
+        collectIds(imported, ids);
+        check("Import tree as root organization", jdbc, null);
+
+        // f -> g below c, rows out of order
+        String csv = "name,parent\n" + PREFIX + "g," + PREFIX + "f\n" + PREFIX + "f,\n";
+        for (OrganizationTreeNodeDTO tree: importService.importTreesFromCsv(new StringReader(csv), ids.get("c")))
+            collectIds(tree, ids);
+        check("Import trees from CSV below an organization", jdbc, null);
+
+        OrganizationDTO h = organizationService.addParentToOrganization(
+                new OrganizationDTO(null, PREFIX + "h", null, true), ids.get("e"));
+        ids.put("h", h.getId());
+        check("Create organization below an organization", jdbc, null);
+
+        // b with d, e and h below f
+        int moved = organizationService.moveOrganization(ids.get("b"), ids.get("f"));
+        check("Move subtree", jdbc, moved == 4 ? null : "moved " + moved + " organizations, expected 4");
+        String bPath = path(jdbc, ids.get("b"));
+        String expected = String.join(".", ids.get("a").toString(), ids.get("c").toString(),
+                ids.get("f").toString(), ids.get("b").toString());
+        check("Paths after move", jdbc, expected.equals(bPath) && path(jdbc, ids.get("h")).startsWith(bPath + ".")
+                ? null : "path of b is " + bPath + ", expected " + expected);
+
+        try {
+            organizationService.moveOrganization(ids.get("a"), ids.get("h"));
+            check("Reject move below own descendant", jdbc, "move was accepted");
+        } catch (IllegalArgumentException e) {
+            check("Reject move below own descendant", jdbc, null);
+        }
+
+        // Back to the root, which detaches b from every former ancestor
+        organizationService.moveOrganization(ids.get("b"), ids.get("a"));
+        check("Move subtree back", jdbc, null);
+
+        organizationService.deleteOrganization(ids.get("h"));
+        check("Delete organization", jdbc, null);
+
+        closureRepository.deleteAllLinks();
+        engine.rebuildIfStale();
+        check("Rebuild from paths", jdbc, null);
+
+        List<Long> ancestors = new ArrayList<>();
+        for (OrganizationDTO o: organizationService.getAncestorsOfOrganization(ids.get("g")))
+            ancestors.add(o.getId());
+        List<Long> expectedAncestors = Arrays.asList(ids.get("a"), ids.get("c"), ids.get("f"));
+        check("Ancestors ordered from root", jdbc, expectedAncestors.equals(ancestors)
+                ? null : "found " + ancestors + ", expected " + expectedAncestors);
+    }
+
+    /**
+     * Compares the closure table with the links implied by the organization paths and reports the scenario.
+     */
+    private static void check(String scenario, JdbcTemplate jdbc, String error) {
+        Set<String> expected = new TreeSet<>();
+        for (Map<String, Object> row: jdbc.queryForList("select org_id, org_path from organizations")) {
+            Long id = ((Number) row.get("org_id")).longValue();
+            String path = (String) row.get("org_path");
+            String[] segments = (path == null || path.isEmpty() ? id.toString() : path).split("\\.");
+            for (int i = 0; i < segments.length; i++)
+                expected.add(segments[i] + ">" + id + "@" + (segments.length - 1 - i));
+        }
+        Set<String> actual = new TreeSet<>(jdbc.queryForList("select concat(closure_ancestor_id, '>', " +
+                "closure_descendant_id, '@', closure_depth) from organization_closure", String.class));
+
+        if (error == null && !expected.equals(actual)) {
+            Set<String> missing = new TreeSet<>(expected);
+            missing.removeAll(actual);
+            Set<String> extra = new TreeSet<>(actual);
+            extra.removeAll(expected);
+            error = "closure links missing " + missing + ", unexpected " + extra;
+        }
+        if (error != null)
+            failures++;
+        System.out.printf("%-46s %s%n", scenario, error == null ? "OK (" + actual.size() + " links)" : "FAILED: " + error);
+    }
+
+    private static String path(JdbcTemplate jdbc, Long id) {
+        return jdbc.queryForObject("select org_path from organizations where org_id = ?", String.class, id);
+    }
+
+    private static OrganizationTreeNodeDTO node(String name, OrganizationTreeNodeDTO... children) {
+        return new OrganizationTreeNodeDTO(null, PREFIX + name, null, true, new ArrayList<>(Arrays.asList(children)));
+    }
+
+    private static void collectIds(OrganizationTreeNodeDTO node, Map<String, Long> ids) {
+        ids.put(node.getName().substring(PREFIX.length()), node.getId());
+        if (node.getSubOrganizations() != null)
+            for (OrganizationTreeNodeDTO child: node.getSubOrganizations())
+                collectIds(child, ids);
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.AuthorizationServer.benchmark;
+
+import com.example.AuthorizationServer.bo.dto.OrganizationTreeNodeDTO;
+import com.example.AuthorizationServer.bo.entity.Organization;
+import com.example.AuthorizationServer.repository.OrganizationRepository;
+import com.example.AuthorizationServer.service.OrganizationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the full organization tree against depth-limited trees, as returned by /organizations/trees/. Reports the
+ * rows read, the time to build the tree and serialize it to JSON, and the size of the JSON. The generated tree has ten
+ * children per organization, numbered level by level, and every twentieth organization is disabled. The repository is
+ * replaced by a stub that returns the same rows as the queries of OrganizationRepository, so the database time is not
+ * included, but the time of the stub filtering rows for depth-limited trees is. Run the main method with the test
+ * classpath, optionally passing the number of organizations.
+ */
+public class OrganizationTreeBenchmark {
+
+    private static final int CHILDREN = 10;
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        List<Organization> organizations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            long id = i + 1;
+            Organization o = new Organization();
+            o.setId(id);
+            o.setName("Organization " + id);
+            // Organization 1 is the root, organization n has parent (n - 2) / CHILDREN + 1
+            o.setPath(i == 0 ? "1" : organizations.get((i - 1) / CHILDREN).getPath() + "." + id);
+            o.setEnabled(id % 20 != 0);
+            organizations.add(o);
+        }
+        organizations.sort(Comparator.comparing(Organization::getPath));
+
+        AtomicLong rows = new AtomicLong();
+        OrganizationRepository repository = (OrganizationRepository) Proxy.newProxyInstance(
+                OrganizationTreeBenchmark.class.getClassLoader(), new Class<?>[] {OrganizationRepository.class},
+                (proxy, method, methodArgs) -> {
+                    List<Organization> result;
+                    if (method.getName().equals("findAllByOrderByPathAsc")) {
+                        result = organizations;
+                    } else if (method.getName().equals("findAllToDepthOrderByPathAsc")) {
+                        int maxSeparators = (Integer) methodArgs[0];
+                        result = new ArrayList<>();
+                        for (Organization o: organizations) {
+                            if (separators(o.getPath()) <= maxSeparators)
+                                result.add(o);
+                        }
+                    } else {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    rows.set(result.size());
+                    return result;
+                });
+        OrganizationService service = new OrganizationService(repository, null, null, null, null, null, null, null, null);
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        System.out.printf("%d organizations%n", size);
+        System.out.printf("%-32s %10s %10s %12s%n", "Tree", "Rows", "Best ms", "JSON bytes");
+        run("Full tree", () -> service.getFullOrganizationTree(), rows, objectMapper);
+        run("Depth 2", () -> service.getFullOrganizationTree(2, false, Collections.emptySet()), rows, objectMapper);
+        run("Depth 2, enabled only", () -> service.getFullOrganizationTree(2, true, Collections.emptySet()), rows,
+                objectMapper);
+        run("Depth 2, one node expanded", () -> service.getFullOrganizationTree(2, false, Collections.singleton(12L)),
+                rows, objectMapper);
+    }
+
+    private interface TreeQuery {
+        List<OrganizationTreeNodeDTO> run();
+    }
+
+    private static void run(String name, TreeQuery query, AtomicLong rows, ObjectMapper objectMapper) throws Exception {
+        long best = Long.MAX_VALUE;
+        int bytes = 0;
+        for (int round = 0; round < ROUNDS + 1; round++) {
+            long start = System.nanoTime();
+            bytes = objectMapper.writeValueAsBytes(query.run()).length;
+            // First round is warm up
+            if (round > 0)
+                best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-32s %10d %10.1f %12d%n", name, rows.get(), best / 1e6, bytes);
+    }
+
+    private static int separators(String path) {
+        int count = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '.')
+                count++;
+        }
+        return count;
+    }
+}
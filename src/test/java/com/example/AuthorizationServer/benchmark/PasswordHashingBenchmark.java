@@ -0,0 +1,48 @@
+package com.example.AuthorizationServer.benchmark;
+
+import com.example.AuthorizationServer.security.PasswordHashingExecutor;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures bulk password hashing throughput of PasswordHashingExecutor for an increasing number of threads, up to the
+ * number of available cores, and prints the speed-up relative to a single thread. Run the main method with the test
+ * classpath, optionally passing the number of passwords to hash per run.
+ */
+public class PasswordHashingBenchmark {
+
+    public static void main(String[] args) {
+        int passwords = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        List<String> rawPasswords = new ArrayList<>();
+        for (int i = 0; i < passwords; i++) {
+            rawPasswords.add("password" + i);
+        }
+
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder();
+
+        // Warm up
+        encoder.encode("warmup");
+
+        System.out.printf("Hashing %d passwords, %d cores available%n", passwords, cores);
+        System.out.printf("%8s %12s %14s %10s%n", "threads", "millis", "hashes/sec", "speed-up");
+
+        double baseline = 0;
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            PasswordHashingExecutor executor = new PasswordHashingExecutor(encoder, threads, passwords);
+            long start = System.nanoTime();
+            executor.encodeAll(rawPasswords);
+            double millis = (System.nanoTime() - start) / 1_000_000.0;
+            executor.destroy();
+
+            if (threads == 1)
+                baseline = millis;
+
+            System.out.printf("%8d %12.0f %14.1f %9.2fx%n", threads, millis, passwords / (millis / 1000.0),
+                    baseline / millis);
+        }
+    }
+}
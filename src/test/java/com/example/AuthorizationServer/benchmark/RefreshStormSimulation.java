@@ -0,0 +1,123 @@
+package com.example.AuthorizationServer.benchmark;
+
+import com.example.AuthorizationServer.security.CustomTokenConverter;
+import com.example.AuthorizationServer.security.JitteredTokenServices;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+
+import java.util.*;
+
+/**
+ * Simulates the load on /oauth/token from clients that all log in within a few seconds of each other, for example
+ * after an outage or at the start of a working day, and then keep their access tokens fresh for an hour. Each client
+ * refreshes its access token when it is due, and logs in again once its refresh token has expired. Token validities
+ * come from JitteredTokenServices and refresh times from CustomTokenConverter, with the validities of fooClientId.
+ *
+ * Compares clients that refresh when their token expires and tokens with a fixed validity, as before, against
+ * clients that follow the refresh_at claim with and without expiry jitter. Reports the peak and average number of
+ * token requests per second after the initial logins, and their ratio, as well as the peak during the last ten minutes
+ * once refreshes have had time to spread. Run the main method with the test classpath, optionally passing the number
+ * of clients.
+ */
+public class RefreshStormSimulation {
+
+    private static final int ACCESS_TOKEN_VALIDITY_SECONDS = 180;
+
+    private static final int REFRESH_TOKEN_VALIDITY_SECONDS = 600;
+
+    private static final long LOGIN_WINDOW_MILLIS = 5_000;
+
+    private static final long SIMULATED_MILLIS = 60 * 60 * 1000;
+
+    // Delay between a token being due and the refresh reaching the server
+    private static final long MAX_CLIENT_DELAY_MILLIS = 200;
+
+    private static final int LATE_PEAK_SECONDS = 10 * 60;
+
+    public static void main(String[] args) {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+
+        System.out.printf("%d clients logging in within %d s, simulated for %d min%n", clients,
+                LOGIN_WINDOW_MILLIS / 1000, SIMULATED_MILLIS / 60_000);
+        System.out.printf("%-36s %8s %10s %13s %16s%n", "Scenario", "Peak/s", "Average/s", "Peak/average",
+                "Late peak/avg");
+        run("Refresh at expiry, no jitter", clients, 0, 1.0);
+        run("Refresh at refresh_at, no jitter", clients, 0, 0.8);
+        run("Refresh at refresh_at, jitter 0.1", clients, 0.1, 0.8);
+        run("Refresh at refresh_at, jitter 0.2", clients, 0.2, 0.8);
+    }
+
+    private static void run(String scenario, int clients, double jitter, double refreshAtFraction) {
+        Random random = new Random(42);
+        SimulatedTokenServices tokenServices = new SimulatedTokenServices(jitter);
+
+        // Token requests per second of simulated time
+        int[] requests = new int[(int) (SIMULATED_MILLIS / 1000) + 1];
+
+        // Each event is {time of the next token request, expiry of the refresh token} of one client
+        PriorityQueue<long[]> events = new PriorityQueue<>(Comparator.comparingLong(event -> event[0]));
+        for (int i = 0; i < clients; i++)
+            events.add(new long[] {(long) (random.nextDouble() * LOGIN_WINDOW_MILLIS), 0});
+
+        while (!events.isEmpty()) {
+            long[] event = events.poll();
+            long now = event[0];
+            if (now >= SIMULATED_MILLIS)
+                continue;
+            requests[(int) (now / 1000)]++;
+
+            // Logs in again once the refresh token has expired, which also issues a new refresh token
+            long refreshTokenExpiry = event[1];
+            if (now >= refreshTokenExpiry)
+                refreshTokenExpiry = now + tokenServices.refreshTokenValiditySeconds() * 1000L;
+
+            long issuedAt = now / 1000;
+            long expiresAt = (now + tokenServices.accessTokenValiditySeconds() * 1000L) / 1000;
+            long due = CustomTokenConverter.refreshAt(issuedAt, expiresAt, refreshAtFraction) * 1000;
+            long next = Math.max(now + 1, due) + (long) (random.nextDouble() * MAX_CLIENT_DELAY_MILLIS);
+            events.add(new long[] {next, refreshTokenExpiry});
+        }
+
+        // Skips the initial logins, which are the same in every scenario
+        int from = (int) (LOGIN_WINDOW_MILLIS / 1000) + 1;
+        long total = 0;
+        int peak = 0;
+        int latePeak = 0;
+        // The last second is cut short by the end of the simulation
+        for (int second = from; second < requests.length - 1; second++) {
+            total += requests[second];
+            peak = Math.max(peak, requests[second]);
+            if (second >= requests.length - 1 - LATE_PEAK_SECONDS)
+                latePeak = Math.max(latePeak, requests[second]);
+        }
+        double average = total / (double) (requests.length - 1 - from);
+        System.out.printf("%-36s %8d %10.1f %13.1f %16.1f%n", scenario, peak, average, peak / average,
+                latePeak / average);
+    }
+
+    /**
+     * Exposes the jittered validities of fooClientId.
+     */
+    private static class SimulatedTokenServices extends JitteredTokenServices {
+
+        private final OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "fooClientId",
+                Collections.emptyList(), true, Collections.emptySet(), null, null, null, null);
+
+        private SimulatedTokenServices(double jitter) {
+            BaseClientDetails client = new BaseClientDetails("fooClientId", null, "read,write",
+                    "password,refresh_token", "USER");
+            client.setAccessTokenValiditySeconds(ACCESS_TOKEN_VALIDITY_SECONDS);
+            client.setRefreshTokenValiditySeconds(REFRESH_TOKEN_VALIDITY_SECONDS);
+            client.addAdditionalInformation(EXPIRY_JITTER, String.valueOf(jitter));
+            setClientDetailsService(clientId -> client);
+        }
+
+        private int accessTokenValiditySeconds() {
+            return getAccessTokenValiditySeconds(request);
+        }
+
+        private int refreshTokenValiditySeconds() {
+            return getRefreshTokenValiditySeconds(request);
+        }
+    }
+}
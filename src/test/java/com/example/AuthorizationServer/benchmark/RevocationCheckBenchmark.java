@@ -0,0 +1,134 @@
+package com.example.AuthorizationServer.benchmark;
+
+import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
+import com.example.AuthorizationServer.repository.ClientRevocationRepository;
+import com.example.AuthorizationServer.repository.RevokedTokenRepository;
+import com.example.AuthorizationServer.security.CachingJwtTokenStore;
+import com.example.AuthorizationServer.security.CustomTokenConverter;
+import com.example.AuthorizationServer.security.CustomUserDetails;
+import com.example.AuthorizationServer.security.JwtKeyProvider;
+import com.example.AuthorizationServer.security.TokenRevocationList;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the per-request overhead of checking access tokens against the TokenRevocationList. Compares reading a
+ * cached access token through CachingJwtTokenStore with and without a revocation list holding the given number of
+ * revoked tokens, and reports the false positive rate of the Bloom filter. The database is replaced by a stub that
+ * counts confirmation lookups. Run the main method with the test classpath, optionally passing the number of revoked
+ * tokens.
+ */
+public class RevocationCheckBenchmark {
+
+    private static final int READS = 200_000;
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int revoked = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        AtomicLong confirmations = new AtomicLong();
+        RevokedTokenRepository revokedTokens = (RevokedTokenRepository) Proxy.newProxyInstance(
+                RevocationCheckBenchmark.class.getClassLoader(), new Class<?>[] {RevokedTokenRepository.class},
+                (proxy, method, methodArgs) -> {
+                    if (method.getName().equals("existsById")) {
+                        confirmations.incrementAndGet();
+                        return false;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        ClientRevocationRepository clientRevocations = (ClientRevocationRepository) Proxy.newProxyInstance(
+                RevocationCheckBenchmark.class.getClassLoader(), new Class<?>[] {ClientRevocationRepository.class},
+                (proxy, method, methodArgs) -> { throw new UnsupportedOperationException(method.getName()); });
+
+        TokenRevocationList revocationList = new TokenRevocationList(revokedTokens, clientRevocations, 100_000, 0.01,
+                900, 5000);
+        long expiry = System.currentTimeMillis() + 600_000;
+        for (int i = 0; i < revoked; i++)
+            revocationList.record(UUID.randomUUID().toString(), expiry);
+        revocationList.recordClient("revokedClientId", System.currentTimeMillis());
+
+        JwtKeyProvider keyProvider = new JwtKeyProvider(new ClassPathResource("authserver.p12"), "authserver",
+                "authserver", "authserver", new String[0]);
+        CustomTokenConverter converter = new CustomTokenConverter();
+        converter.setKeyProvider(keyProvider);
+        converter.afterPropertiesSet();
+        String token = issue(converter);
+
+        CachingJwtTokenStore plain = new CachingJwtTokenStore(converter, 100, 600_000);
+        CachingJwtTokenStore checked = new CachingJwtTokenStore(converter, 100, 600_000);
+        checked.setTokenRevocationList(revocationList);
+
+        double plainNanos = measure(plain, token);
+        double checkedNanos = measure(checked, token);
+
+        // Lookup cost and false positive rate for jtis that were never revoked
+        int lookups = 1_000_000;
+        List<String> jtis = new ArrayList<>(lookups);
+        for (int i = 0; i < lookups; i++)
+            jtis.add(UUID.randomUUID().toString());
+        confirmations.set(0);
+        long start = System.nanoTime();
+        for (String jti: jtis)
+            revocationList.isRevoked(jti, "fooClientId", null);
+        double lookupNanos = (System.nanoTime() - start) / (double) lookups;
+
+        System.out.printf("Revoked tokens in list:            %d%n", revoked);
+        System.out.printf("Bloom filter size:                 %d KB%n", revocationList.filterBitCount() / 8 / 1024);
+        System.out.printf("Cached token read, no list:        %.0f ns%n", plainNanos);
+        System.out.printf("Cached token read, with list:      %.0f ns%n", checkedNanos);
+        System.out.printf("Overhead per request:              %.0f ns%n", checkedNanos - plainNanos);
+        System.out.printf("isRevoked, not revoked jti:        %.0f ns%n", lookupNanos);
+        System.out.printf("False positives (database lookups): %d of %d (%.2f%%)%n", confirmations.get(), lookups,
+                100.0 * confirmations.get() / lookups);
+        System.out.printf("Expected false positive rate:      %.2f%%%n",
+                100 * expectedFalsePositiveRate(revocationList.filterBitCount(), revoked, 100_000));
+    }
+
+    private static double measure(CachingJwtTokenStore store, String token) {
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS + 1; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < READS; i++) {
+                store.readAccessToken(token);
+                store.readAuthentication(token);
+            }
+            // First round is warm up
+            if (round > 0)
+                best = Math.min(best, (System.nanoTime() - start) / (double) READS);
+        }
+        return best;
+    }
+
+    private static String issue(CustomTokenConverter converter) {
+        List<GrantedAuthority> authorities = Collections.singletonList(new SimpleGrantedAuthority("USER"));
+        CustomUserDetails user = new CustomUserDetails("user", "", authorities, 42L,
+                Collections.singleton(new OrganizationDTO(1L, "KTH", "1", true)));
+        OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "fooClientId", authorities, true,
+                new HashSet<>(Arrays.asList("read", "write")), null, null, null, null);
+        OAuth2Authentication authentication = new OAuth2Authentication(request,
+                new UsernamePasswordAuthenticationToken(user, null, authorities));
+
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setExpiration(new Date(System.currentTimeMillis() + 180_000));
+        token.setScope(request.getScope());
+        return converter.enhance(token, authentication).getValue();
+    }
+
+    /**
+     * Standard approximation (1 - e^(-kn/m))^k with the hash count the filter derived from its expected insertions.
+     */
+    private static double expectedFalsePositiveRate(long bits, int inserted, long expected) {
+        long hashes = Math.max(1, Math.round((double) bits / expected * Math.log(2)));
+        return Math.pow(1 - Math.exp(-hashes * (double) inserted / bits), hashes);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.AuthorizationServer.benchmark;
+
+import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
+import com.example.AuthorizationServer.security.CustomTokenConverter;
+import com.example.AuthorizationServer.security.CustomUserDetails;
+import com.example.AuthorizationServer.security.JwtKeyProvider;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Measures tokens per second and bytes allocated per token for issuing an access and refresh token pair through
+ * CustomTokenConverter.enhance, compared with the map based issuance it replaced. Allocation is read from the
+ * HotSpot thread allocation counter. Run the main method with the test classpath, optionally passing the number of
+ * tokens per round.
+ */
+public class TokenIssuanceBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int tokens = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        JwtKeyProvider keyProvider = new JwtKeyProvider(new ClassPathResource("authserver.p12"), "authserver",
+                "authserver", "authserver", new String[0]);
+
+        CustomTokenConverter current = new CustomTokenConverter();
+        current.setKeyProvider(keyProvider);
+        current.afterPropertiesSet();
+
+        LegacyTokenConverter legacy = new LegacyTokenConverter();
+        legacy.setKeyPair(keyProvider.getSigningKeyPair());
+        legacy.afterPropertiesSet();
+
+        System.out.printf("Issuing %d access and refresh token pairs per round, best of %d rounds%n", tokens, ROUNDS);
+        System.out.printf("%-10s %6s %14s %14s %16s %16s%n", "converter", "orgs", "tokens/sec", "", "bytes/token", "");
+        for (int orgs: new int[] {2, 50}) {
+            OAuth2Authentication authentication = authentication(orgs);
+            Result before = measure(legacy, authentication, tokens);
+            Result after = measure(current, authentication, tokens);
+            System.out.printf("%-10s %6d %14.0f %14s %16.0f %16s%n", "legacy", orgs, before.tokensPerSecond, "",
+                    before.bytesPerToken, "");
+            System.out.printf("%-10s %6d %14.0f %13.2fx %16.0f %15.0f%%%n", "current", orgs, after.tokensPerSecond,
+                    after.tokensPerSecond / before.tokensPerSecond, after.bytesPerToken,
+                    100.0 * (after.bytesPerToken - before.bytesPerToken) / before.bytesPerToken);
+        }
+    }
+
+    private static Result measure(JwtAccessTokenConverter converter, OAuth2Authentication authentication, int tokens) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // Warm up
+        for (int i = 0; i < tokens; i++)
+            converter.enhance(accessToken(), authentication);
+
+        Result best = new Result();
+        for (int round = 0; round < ROUNDS; round++) {
+            List<OAuth2AccessToken> input = new ArrayList<>(tokens);
+            for (int i = 0; i < tokens; i++)
+                input.add(accessToken());
+
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            for (OAuth2AccessToken token: input)
+                converter.enhance(token, authentication);
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+            best.tokensPerSecond = Math.max(best.tokensPerSecond, tokens / seconds);
+            best.bytesPerToken = Math.min(best.bytesPerToken, allocated / (double) tokens);
+        }
+        return best;
+    }
+
+    private static OAuth2Authentication authentication(int orgs) {
+        Set<OrganizationDTO> memberships = new HashSet<>();
+        for (long i = 0; i < orgs; i++)
+            memberships.add(new OrganizationDTO(100 + i, "Department of Example Studies " + i, "1.2." + (100 + i), true));
+
+        List<GrantedAuthority> authorities = Collections.singletonList(new SimpleGrantedAuthority("USER"));
+        CustomUserDetails user = new CustomUserDetails("user", "", authorities, 42L, memberships);
+        OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "fooClientId", authorities, true,
+                new HashSet<>(Arrays.asList("read", "write")), null, null, null, null);
+        return new OAuth2Authentication(request, new UsernamePasswordAuthenticationToken(user, null, authorities));
+    }
+
+    private static OAuth2AccessToken accessToken() {
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setExpiration(new Date(System.currentTimeMillis() + 180_000));
+        token.setScope(new HashSet<>(Arrays.asList("read", "write")));
+        token.setRefreshToken(new DefaultExpiringOAuth2RefreshToken(UUID.randomUUID().toString(),
+                new Date(System.currentTimeMillis() + 600_000)));
+        return token;
+    }
+
+    private static class Result {
+        private double tokensPerSecond = 0;
+        private double bytesPerToken = Double.MAX_VALUE;
+    }
+
+    /**
+     * The enhance implementation CustomTokenConverter used before issuance was streamed.
+     */
+    private static class LegacyTokenConverter extends JwtAccessTokenConverter {
+
+        @Override
+        public OAuth2AccessToken enhance(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+            CustomUserDetails user = (CustomUserDetails) authentication.getPrincipal();
+
+            Map<String, Object> additionalInfo = new HashMap<>();
+            additionalInfo.put("orgs", user.getOrganizations());
+            additionalInfo.put("id", user.getId());
+            ((DefaultOAuth2AccessToken) accessToken).setAdditionalInformation(additionalInfo);
+
+            accessToken = super.enhance(accessToken, authentication);
+            ((DefaultOAuth2AccessToken) accessToken).setAdditionalInformation(new HashMap<>());
+            return accessToken;
+        }
+    }
+}
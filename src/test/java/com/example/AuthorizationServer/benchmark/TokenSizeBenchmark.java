@@ -0,0 +1,114 @@
+package com.example.AuthorizationServer.benchmark;
+
+import com.example.AuthorizationServer.bo.dto.OrganizationDTO;
+import com.example.AuthorizationServer.security.CustomTokenConverter;
+import com.example.AuthorizationServer.security.CustomUserDetails;
+import com.example.AuthorizationServer.security.JwtKeyProvider;
+import com.example.AuthorizationServer.security.OrganizationClaimMode;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import java.util.*;
+
+/**
+ * Prints the size of access tokens issued for the users of the example seed data in AuthorizationServerApplication
+ * for each organization claim mode, plus a synthetic user with many memberships. Run the main method with the test
+ * classpath.
+ */
+public class TokenSizeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        // Organizations of the seed data, ids in insertion order
+        Map<String, OrganizationDTO> orgs = new LinkedHashMap<>();
+        addOrganization(orgs, 1L, "KTH", "1");
+        addOrganization(orgs, 2L, "STH", "1.2");
+        addOrganization(orgs, 3L, "SCI", "1.3");
+        addOrganization(orgs, 4L, "Teachers", "1.2.4");
+        addOrganization(orgs, 5L, "Students", "1.2.5");
+        addOrganization(orgs, 6L, "SU", "6");
+        addOrganization(orgs, 7L, "Engelska Institutionen", "6.7");
+        addOrganization(orgs, 8L, "Historiska institutionen", "6.8");
+
+        Map<String, List<String>> users = new LinkedHashMap<>();
+        users.put("sudo", Collections.emptyList());
+        users.put("kthadmin", Arrays.asList("KTH"));
+        users.put("suadmin", Arrays.asList("SU"));
+        users.put("kthuser", Arrays.asList("STH", "SCI"));
+        users.put("jonas", Arrays.asList("Teachers"));
+        users.put("gustav", Arrays.asList("Teachers", "Students"));
+        users.put("andreas", Arrays.asList("SU"));
+        users.put("erik", Arrays.asList("SU", "Engelska Institutionen"));
+        users.put("bjorn", Arrays.asList("Historiska institutionen"));
+        users.put("pelle", Arrays.asList("SCI", "STH"));
+        users.put("tuva", Arrays.asList("Engelska Institutionen", "Historiska institutionen"));
+        users.put("meja", Arrays.asList("Students"));
+
+        // Synthetic user with 50 memberships three levels down
+        List<String> many = new ArrayList<>();
+        for (long i = 100; i < 150; i++) {
+            String name = "Department of Example Studies " + i;
+            addOrganization(orgs, i, name, "1.2." + i);
+            many.add(name);
+        }
+        users.put("many (synthetic)", many);
+
+        JwtKeyProvider keyProvider = new JwtKeyProvider(new ClassPathResource("authserver.p12"), "authserver",
+                "authserver", "authserver", new String[0]);
+        Map<OrganizationClaimMode, CustomTokenConverter> converters = new EnumMap<>(OrganizationClaimMode.class);
+        for (OrganizationClaimMode mode: OrganizationClaimMode.values()) {
+            CustomTokenConverter converter = new CustomTokenConverter();
+            converter.setKeyProvider(keyProvider);
+            converter.setOrganizationClaimMode(mode);
+            converter.afterPropertiesSet();
+            converters.put(mode, converter);
+        }
+
+        System.out.printf("%-18s %6s %8s %8s %8s %8s%n", "user", "orgs", "full", "ids", "paths", "saved");
+        Map<OrganizationClaimMode, Long> totals = new EnumMap<>(OrganizationClaimMode.class);
+        for (Map.Entry<String, List<String>> user: users.entrySet()) {
+            Set<OrganizationDTO> memberships = new HashSet<>();
+            for (String name: user.getValue())
+                memberships.add(orgs.get(name));
+
+            Map<OrganizationClaimMode, Integer> sizes = new EnumMap<>(OrganizationClaimMode.class);
+            for (OrganizationClaimMode mode: OrganizationClaimMode.values()) {
+                int size = tokenSize(converters.get(mode), user.getKey(), memberships);
+                sizes.put(mode, size);
+                if (!user.getKey().contains("synthetic"))
+                    totals.merge(mode, (long) size, Long::sum);
+            }
+            int full = sizes.get(OrganizationClaimMode.FULL);
+            int ids = sizes.get(OrganizationClaimMode.IDS);
+            System.out.printf("%-18s %6d %8d %8d %8d %7.1f%%%n", user.getKey(), memberships.size(), full, ids,
+                    sizes.get(OrganizationClaimMode.PATHS), 100.0 * (full - ids) / full);
+        }
+        long full = totals.get(OrganizationClaimMode.FULL);
+        long ids = totals.get(OrganizationClaimMode.IDS);
+        System.out.printf("%-18s %6s %8d %8d %8d %7.1f%%%n", "seed data total", "", full, ids,
+                totals.get(OrganizationClaimMode.PATHS), 100.0 * (full - ids) / full);
+    }
+
+    private static void addOrganization(Map<String, OrganizationDTO> orgs, Long id, String name, String path) {
+        orgs.put(name, new OrganizationDTO(id, name, path, true));
+    }
+
+    private static int tokenSize(CustomTokenConverter converter, String username, Set<OrganizationDTO> memberships) {
+        List<GrantedAuthority> authorities = Collections.singletonList(new SimpleGrantedAuthority("USER"));
+        CustomUserDetails user = new CustomUserDetails(username, "", authorities, 42L, memberships);
+
+        OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "fooClientId", authorities, true,
+                new HashSet<>(Arrays.asList("read", "write")), null, null, null, null);
+        OAuth2Authentication authentication = new OAuth2Authentication(request,
+                new UsernamePasswordAuthenticationToken(user, null, authorities));
+
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setExpiration(new Date(System.currentTimeMillis() + 180_000));
+        token.setScope(request.getScope());
+        return converter.enhance(token, authentication).getValue().length();
+    }
+}